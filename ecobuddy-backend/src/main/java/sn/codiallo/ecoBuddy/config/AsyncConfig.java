@@ -0,0 +1,26 @@
+package sn.codiallo.ecoBuddy.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    // Pool dédié à l'enrichissement Gemini des scans (hors threads de requête)
+    @Bean
+    public ThreadPoolTaskExecutor scanEnrichmentExecutor(
+            @Value("${scanner.enrichment.core-pool-size:4}") int corePoolSize,
+            @Value("${scanner.enrichment.max-pool-size:8}") int maxPoolSize,
+            @Value("${scanner.enrichment.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("scan-enrich-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
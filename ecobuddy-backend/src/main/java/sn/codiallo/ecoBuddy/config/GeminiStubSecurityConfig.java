@@ -0,0 +1,31 @@
+package sn.codiallo.ecoBuddy.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Accès libre au remplaçant Gemini local (GeminiStubController), appelé par
+ * l'application elle-même sans JWT. Chaîne propre au profil gemini-stub :
+ * hors de ce profil, /v1beta/models/** relève de la chaîne principale.
+ */
+@Configuration
+@Profile("gemini-stub")
+public class GeminiStubSecurityConfig {
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain geminiStubFilterChain(HttpSecurity http) throws Exception {
+        http.securityMatcher("/v1beta/models/**")
+                .csrf(csrf -> csrf.disable())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(authz -> authz.anyRequest().permitAll());
+
+        return http.build();
+    }
+}
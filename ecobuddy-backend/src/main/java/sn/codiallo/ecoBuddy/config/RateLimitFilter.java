@@ -0,0 +1,100 @@
+package sn.codiallo.ecoBuddy.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import sn.codiallo.ecoBuddy.service.UserRateLimiter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Limite de débit par utilisateur sur les endpoints qui appellent Gemini (narration
+ * et scans avec analyse). Placé après JwtAuthenticationFilter dans la chaîne de
+ * sécurité ; au-delà du budget, répond 429 avec l'en-tête Retry-After.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final UserRateLimiter userRateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.cost.narration-start:2}")
+    private int narrationStartCost;
+
+    @Value("${rate-limit.cost.narration-choice:1}")
+    private int narrationChoiceCost;
+
+    @Value("${rate-limit.cost.scan:2}")
+    private int scanCost;
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+
+        String endpoint = endpointOf(request);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!enabled || endpoint == null || authentication == null || !authentication.isAuthenticated()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long waitMillis = userRateLimiter.tryAcquire(authentication.getName(), costOf(endpoint));
+        if (waitMillis == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        meterRegistry.counter("ratelimit.rejected", "endpoint", endpoint).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (waitMillis + 999) / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", "Too many requests, please retry later"));
+    }
+
+    // Endpoints limités (null = non limité) ; les variantes /stream partagent le budget
+    private String endpointOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+
+        if ("GET".equals(method) && (path.equals("/narration/start") || path.equals("/narration/start/stream"))) {
+            return "narration-start";
+        }
+        if ("POST".equals(method) && (path.equals("/narration/choice") || path.equals("/narration/choice/stream"))) {
+            return "narration-choice";
+        }
+        if ("POST".equals(method) && (path.equals("/scanner/object") || path.equals("/scanner/object/legacy")
+                || path.equals("/scanner/scan"))) {
+            return "scan";
+        }
+        return null;
+    }
+
+    private int costOf(String endpoint) {
+        return switch (endpoint) {
+            case "narration-start" -> narrationStartCost;
+            case "narration-choice" -> narrationChoiceCost;
+            default -> scanCost;
+        };
+    }
+}
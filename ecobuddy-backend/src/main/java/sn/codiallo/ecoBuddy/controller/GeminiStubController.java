@@ -0,0 +1,76 @@
+package sn.codiallo.ecoBuddy.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import sn.codiallo.ecoBuddy.dto.GeminiRequest;
+import sn.codiallo.ecoBuddy.service.GeminiStubService;
+
+import java.util.List;
+
+/**
+ * Remplaçant local de l'API Gemini (generateContent et streamGenerateContent),
+ * actif uniquement avec le profil gemini-stub. Pointer gemini.api.base-url dessus
+ * (voir application-gemini-stub.properties).
+ */
+@RestController
+@RequestMapping("/v1beta/models")
+@RequiredArgsConstructor
+@Profile("gemini-stub")
+public class GeminiStubController {
+
+    private final GeminiStubService geminiStubService;
+
+    @PostMapping("/{model}:generateContent")
+    public Mono<ResponseEntity<Object>> generateContent(@PathVariable String model,
+                                                        @RequestBody GeminiRequest request) {
+        Mono<Void> latency = Mono.delay(geminiStubService.nextLatency()).then();
+
+        if (geminiStubService.shouldFail()) {
+            return latency.thenReturn(ResponseEntity.status(geminiStubService.getErrorStatus())
+                    .body(geminiStubService.toErrorResponse()));
+        }
+
+        GeminiStubService.StubReply reply = geminiStubService.generate(promptOf(request));
+        return latency.thenReturn(ResponseEntity.ok(
+                geminiStubService.toGeminiResponse(reply.text(), reply.truncated())));
+    }
+
+    /**
+     * Une erreur simulée coupe le flux après le premier fragment ; une troncature
+     * arrête le texte plus tôt avec finishReason MAX_TOKENS sur le dernier fragment.
+     */
+    @PostMapping(value = "/{model}:streamGenerateContent", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamGenerateContent(@PathVariable String model,
+                                                               @RequestBody GeminiRequest request) {
+        boolean fail = geminiStubService.shouldFail();
+        GeminiStubService.StubReply reply = geminiStubService.generate(promptOf(request));
+        List<String> chunks = geminiStubService.chunks(reply.text());
+        int last = chunks.size() - 1;
+
+        Flux<ServerSentEvent<Object>> events = Flux.range(0, chunks.size())
+                .take(fail ? 1 : chunks.size())
+                .delayElements(geminiStubService.getChunkDelay())
+                .map(i -> ServerSentEvent.<Object>builder(geminiStubService.toGeminiResponse(
+                        chunks.get(i), i == last && reply.truncated())).build());
+
+        if (fail) {
+            events = events.concatWith(Flux.error(new IllegalStateException("Simulated stream failure (gemini-stub)")));
+        }
+        return Mono.delay(geminiStubService.nextLatency()).thenMany(events);
+    }
+
+    private String promptOf(GeminiRequest request) {
+        if (request.getContents() == null || request.getContents().isEmpty()
+                || request.getContents().get(0).getParts() == null
+                || request.getContents().get(0).getParts().isEmpty()) {
+            return "";
+        }
+        return request.getContents().get(0).getParts().get(0).getText();
+    }
+}
@@ -4,10 +4,14 @@ import jakarta.validation.Valid;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import sn.codiallo.ecoBuddy.dto.*;
 import sn.codiallo.ecoBuddy.service.NarrativeService;
 
@@ -20,40 +24,65 @@ public class NarrativeController {
     private final NarrativeService narrativeService;
 
     @GetMapping("/start")
-    public ResponseEntity<?> startNarrative() {
+    public Mono<ResponseEntity<?>> startNarrative() {
         try {
             String username = getCurrentUsername();
-            NarrativeStartResponse response = narrativeService.startNarrative(username);
-            return ResponseEntity.ok(response);
+            return narrativeService.startNarrative(username)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .onErrorResume(RuntimeException.class, this::badRequest);
         } catch (RuntimeException e) {
-            return ResponseEntity.badRequest()
-                    .body(new ErrorResponse(e.getMessage()));
+            return badRequest(e);
         }
     }
 
     @PostMapping("/choice")
-    public ResponseEntity<?> makeChoice(@Valid @RequestBody NarrativeChoiceRequest request) {
+    public Mono<ResponseEntity<?>> makeChoice(@Valid @RequestBody NarrativeChoiceRequest request) {
+        try {
+            String username = getCurrentUsername();
+            return narrativeService.processChoice(
+                            request.getSessionId(),
+                            request.getChoice(),
+                            username
+                    )
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .onErrorResume(RuntimeException.class, this::badRequest);
+        } catch (RuntimeException e) {
+            return badRequest(e);
+        }
+    }
+
+    @GetMapping(value = "/start/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamStartNarrative() {
+        try {
+            String username = getCurrentUsername();
+            return toServerSentEvents(narrativeService.streamStartNarrative(username));
+        } catch (RuntimeException e) {
+            return Flux.just(errorEvent(e));
+        }
+    }
+
+    @PostMapping(value = "/choice/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamChoice(@Valid @RequestBody NarrativeChoiceRequest request) {
         try {
             String username = getCurrentUsername();
-            NarrativeChoiceResponse response = narrativeService.processChoice(
+            return toServerSentEvents(narrativeService.streamChoice(
                     request.getSessionId(),
                     request.getChoice(),
                     username
-            );
-            return ResponseEntity.ok(response);
+            ));
         } catch (RuntimeException e) {
-            return ResponseEntity.badRequest()
-                    .body(new ErrorResponse(e.getMessage()));
+            return Flux.just(errorEvent(e));
         }
     }
 
     @GetMapping("/history")
     public ResponseEntity<?> getStoryHistory(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
         try {
             String username = getCurrentUsername();
-            StoryHistoryListResponse response = narrativeService.getStoryHistory(username, page, size);
+            StoryHistoryListResponse response = narrativeService.getStoryHistory(username, page, size, cursor);
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest()
@@ -85,6 +114,21 @@ public class NarrativeController {
         }
     }
 
+    private Mono<ResponseEntity<?>> badRequest(RuntimeException e) {
+        return Mono.just(ResponseEntity.badRequest()
+                .body(new ErrorResponse(e.getMessage())));
+    }
+
+    private Flux<ServerSentEvent<Object>> toServerSentEvents(Flux<NarrativeStreamEvent> events) {
+        return events
+                .map(event -> ServerSentEvent.builder(event.getData()).event(event.getEvent()).build())
+                .onErrorResume(RuntimeException.class, e -> Flux.just(errorEvent(e)));
+    }
+
+    private ServerSentEvent<Object> errorEvent(RuntimeException e) {
+        return ServerSentEvent.<Object>builder(new ErrorResponse(e.getMessage())).event("error").build();
+    }
+
     private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !authentication.isAuthenticated()) {
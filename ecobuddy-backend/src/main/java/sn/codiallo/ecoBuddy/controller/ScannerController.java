@@ -2,17 +2,30 @@ package sn.codiallo.ecoBuddy.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import sn.codiallo.ecoBuddy.dto.CatalogDeltaResponse;
+import sn.codiallo.ecoBuddy.dto.ScanAnalysisResponse;
 import sn.codiallo.ecoBuddy.dto.ScanRequest;
 import sn.codiallo.ecoBuddy.dto.ScanResponse;
 import sn.codiallo.ecoBuddy.dto.ObjectScanRequest;
 import sn.codiallo.ecoBuddy.dto.ObjectScanResponse;
+import sn.codiallo.ecoBuddy.dto.ScanStatsResponse;
 import sn.codiallo.ecoBuddy.model.EcoObject;
+import sn.codiallo.ecoBuddy.service.EcoCatalogService;
+import sn.codiallo.ecoBuddy.service.ScanAnalyticsService;
+import sn.codiallo.ecoBuddy.service.ScanEnrichmentService;
 import sn.codiallo.ecoBuddy.service.ScannerService;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -22,6 +35,11 @@ import java.util.List;
 public class ScannerController {
 
     private final ScannerService scannerService;
+    private final ScanAnalyticsService scanAnalyticsService;
+    private final EcoCatalogService ecoCatalogService;
+    private final ScanEnrichmentService scanEnrichmentService;
+
+    private static final String CATALOG_VERSION_HEADER = "X-Catalog-Version";
 
     @PostMapping("/object")
     public ResponseEntity<?> scanObject(@Valid @RequestBody ObjectScanRequest request) {
@@ -99,10 +117,41 @@ public class ScannerController {
     }
 
     @GetMapping("/objects")
-    public ResponseEntity<?> getAllEcoObjects() {
+    public ResponseEntity<?> getAllEcoObjects(
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
-            List<EcoObject> objects = scannerService.getAllEcoObjects();
-            return ResponseEntity.ok(objects);
+            // Synchronisation incrémentale : uniquement les objets modifiés ou retirés
+            if (since != null) {
+                CatalogDeltaResponse delta = ecoCatalogService.getDelta(since);
+                return ResponseEntity.ok()
+                        .header(CATALOG_VERSION_HEADER, String.valueOf(delta.getVersion()))
+                        .body(delta);
+            }
+
+            // Servir l'instantané pré-encodé (gzip si le client l'accepte), sous l'ETag de cet encodage
+            EcoCatalogService.CatalogSnapshot snapshot = ecoCatalogService.getSnapshot();
+            boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+            String etag = snapshot.etag(gzip);
+            if (matchesEtag(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                        .header(CATALOG_VERSION_HEADER, String.valueOf(snapshot.version()))
+                        .build();
+            }
+
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .header(CATALOG_VERSION_HEADER, String.valueOf(snapshot.version()));
+            if (gzip) {
+                return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip());
+            }
+            return builder.body(snapshot.json());
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest()
                     .body(new ErrorResponse(e.getMessage()));
@@ -125,6 +174,62 @@ public class ScannerController {
         }
     }
 
+    @GetMapping("/stats/top")
+    public ResponseEntity<?> getTopScannedObjects(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String region) {
+        try {
+            ScanStatsResponse response = scanAnalyticsService.getTopObjects(limit, from, to, region);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<?> getScanTimeSeries(
+            @RequestParam(required = false) String object,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String region) {
+        try {
+            ScanStatsResponse response = scanAnalyticsService.getTimeSeries(object, granularity, from, to, region);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/analysis/{analysisId}")
+    public ResponseEntity<?> getScanAnalysis(@PathVariable String analysisId) {
+        try {
+            String username = getCurrentUsername();
+            ScanAnalysisResponse response = scanEnrichmentService.getAnalysis(analysisId, username);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping(value = "/analysis/{analysisId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamScanAnalysis(@PathVariable String analysisId) {
+        try {
+            String username = getCurrentUsername();
+            SseEmitter emitter = scanEnrichmentService.subscribe(analysisId, username);
+            return ResponseEntity.ok(emitter);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
     private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !authentication.isAuthenticated()) {
@@ -133,6 +238,23 @@ public class ScannerController {
         return authentication.getName();
     }
 
+    // If-None-Match : liste d'ETags ou "*", comparaison faible (préfixe W/ ignoré)
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static class ErrorResponse {
         private String error;
 
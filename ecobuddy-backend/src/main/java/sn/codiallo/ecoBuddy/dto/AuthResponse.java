@@ -1,5 +1,6 @@
 package sn.codiallo.ecoBuddy.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -19,13 +20,18 @@ public class AuthResponse {
     // Informations utilisateur complètes
     private UserResponse user;
 
-    // Historique des histoires narratives
+    // Première page de l'historique (login uniquement, omise sinon) ; la suite via /narration/history
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<StoryHistoryResponse> storyHistory;
 
+    // Curseur pour GET /narration/history?cursor=..., null si l'historique tient dans la première page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String storyHistoryNextCursor;
+
+    // Sans historique : le champ storyHistory est omis
     public AuthResponse(String token, User user) {
         this.token = token;
         this.user = UserResponse.fromUser(user);
-        this.storyHistory = List.of(); // Empty by default
     }
 
     public AuthResponse(String token, User user, List<StoryHistoryResponse> storyHistory) {
@@ -33,6 +39,11 @@ public class AuthResponse {
         this.user = UserResponse.fromUser(user);
         this.storyHistory = storyHistory != null ? storyHistory : List.of();
     }
+
+    public AuthResponse(String token, User user, List<StoryHistoryResponse> storyHistory, String storyHistoryNextCursor) {
+        this(token, user, storyHistory);
+        this.storyHistoryNextCursor = storyHistoryNextCursor;
+    }
     
     // Constructeur legacy pour compatibilité
     public AuthResponse(String token, String username, String email, String role, Integer points) {
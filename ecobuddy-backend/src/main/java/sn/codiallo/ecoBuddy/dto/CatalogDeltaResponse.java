@@ -0,0 +1,18 @@
+package sn.codiallo.ecoBuddy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogDeltaResponse {
+    private Long since;                     // Version connue par le client
+    private Long version;                   // Version actuelle du catalogue
+    private List<EcoObjectResponse> changed; // Objets ajoutés ou modifiés depuis `since`
+    private List<Long> removed;             // IDs des objets désactivés ou supprimés depuis `since`
+    private Boolean resync;                 // true : delta impossible, recharger le catalogue complet
+}
@@ -0,0 +1,35 @@
+package sn.codiallo.ecoBuddy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import sn.codiallo.ecoBuddy.model.EcoObject;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EcoObjectResponse {
+    // Vue catalogue d'un EcoObject (sans timestamps ni drapeaux internes)
+    private Long id;
+    private String name;
+    private Double carbonImpact;
+    private Boolean recyclable;
+    private String alternative;
+    private String description;
+    private String ecoTips;
+
+    /**
+     * Crée un EcoObjectResponse depuis un EcoObject entity
+     */
+    public static EcoObjectResponse fromEcoObject(EcoObject ecoObject) {
+        return new EcoObjectResponse(
+            ecoObject.getId(),
+            ecoObject.getName(),
+            ecoObject.getCarbonImpact(),
+            ecoObject.getRecyclable(),
+            ecoObject.getAlternative(),
+            ecoObject.getDescription(),
+            ecoObject.getEcoTips()
+        );
+    }
+}
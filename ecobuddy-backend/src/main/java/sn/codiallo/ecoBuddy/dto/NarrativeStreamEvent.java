@@ -0,0 +1,14 @@
+package sn.codiallo.ecoBuddy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NarrativeStreamEvent {
+
+    private String event;   // "title", "content", "choices", "done" ou "error"
+    private Object data;
+}
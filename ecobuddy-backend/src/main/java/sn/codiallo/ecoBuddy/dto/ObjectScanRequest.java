@@ -37,4 +37,7 @@ public class ObjectScanRequest {
     private Double latitude;
     private Double longitude;
     private String scanType; // "real_time", "photo", "bulk"
+    
+    // Scan AR : analyse Gemini en arrière-plan uniquement sur demande
+    private Boolean detailedAnalysis;
 }
\ No newline at end of file
@@ -11,7 +11,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class ObjectScanResponse {
     
     private String id;
@@ -35,6 +35,7 @@ public class ObjectScanResponse {
     private String geminiAnalysis; // Analyse générée par Gemini
     private List<String> ecoTips; // Conseils écologiques personnalisés
     private String funFact; // Fait intéressant sur l'objet
+    private String analysisId; // Analyse Gemini asynchrone : GET /scanner/analysis/{analysisId}
     
     // Métadonnées
     private Boolean isSuccessful;
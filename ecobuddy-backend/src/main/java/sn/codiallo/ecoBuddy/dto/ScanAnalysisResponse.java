@@ -0,0 +1,22 @@
+package sn.codiallo.ecoBuddy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanAnalysisResponse {
+    private String analysisId;
+    private String status;              // "pending", "completed", "failed"
+    private String objectLabel;
+    private String geminiAnalysis;      // Analyse Gemini (ou analyse par défaut si échec)
+    private String environmentalInfo;
+    private List<String> ecoTips;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+}
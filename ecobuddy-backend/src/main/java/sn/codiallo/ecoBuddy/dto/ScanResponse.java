@@ -21,6 +21,9 @@ public class ScanResponse {
     private String objectType; // "plastic", "glass", "paper", "metal", "unknown"
     private String funFact; // Fait intéressant sur l'objet
     
+    // Analyse Gemini asynchrone : GET /scanner/analysis/{analysisId}
+    private String analysisId;
+    
     // Champs pour l'enum EnvironmentalImpact (calculé côté frontend)
     // carbonImpact < 1.0 => low, < 10.0 => medium, >= 10.0 => high
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package sn.codiallo.ecoBuddy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanStatsResponse {
+
+    private LocalDate from;
+    private LocalDate to;
+    private String region;          // null = toutes les régions
+    private String objectName;      // null = tous les objets (séries)
+    private String granularity;     // "day" ou "week" (séries)
+    private List<ObjectCount> topObjects;
+    private List<SeriesPoint> series;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ObjectCount {
+        private String objectName;
+        private Long count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SeriesPoint {
+        private LocalDate period;   // Jour, ou lundi de la semaine ISO
+        private Long count;
+    }
+}
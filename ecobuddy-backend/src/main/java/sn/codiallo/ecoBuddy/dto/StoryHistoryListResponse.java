@@ -13,6 +13,8 @@ public class StoryHistoryListResponse {
 
     private List<StoryHistoryResponse> stories;
     private StoryHistoryStatsResponse stats;
+    // Curseur de la page suivante (paramètre cursor), null s'il n'y en a pas
+    private String nextCursor;
 
     @Data
     @NoArgsConstructor
@@ -0,0 +1,23 @@
+package sn.codiallo.ecoBuddy.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Un choix proposé par le chapitre courant d'une session et les points qu'il rapporte.
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChapterChoice {
+
+    @Column(name = "choice_text", length = 500, nullable = false)
+    private String text;
+
+    @Column(nullable = false)
+    private Integer points;
+}
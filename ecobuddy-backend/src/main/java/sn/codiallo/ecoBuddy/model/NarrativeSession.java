@@ -8,9 +8,12 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
-@Table(name = "narrative_sessions")
+@Table(name = "narrative_sessions",
+       indexes = @Index(name = "idx_narrative_sessions_chapter", columnList = "current_chapter_hash"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,11 +30,23 @@ public class NarrativeSession {
     @Column(nullable = false)
     private String sessionId;
     
+    // Chapitre courant, partagé dans la table chapters (voir StoredChapter)
+    @Column(name = "current_chapter_hash", length = 64)
+    private String currentChapterHash;
+    
+    // Ancien format : chapitre recopié dans la session, lu seulement sans currentChapterHash
     @Column(columnDefinition = "TEXT")
     private String currentStory;
     
-    @Column(columnDefinition = "TEXT")
-    private String conversationHistory;
+    // Choix du chapitre courant, dans l'ordre d'affichage (index = choix envoyé par le client)
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "narrative_session_choices", joinColumns = @JoinColumn(name = "session_id"))
+    @OrderColumn(name = "choice_index")
+    private List<ChapterChoice> choices = new ArrayList<>();
+    
+    // Résumé borné des étapes compactées (voir NarrativeStep)
+    @Column(length = 2000)
+    private String historySummary;
     
     @Column(nullable = false)
     private Boolean isActive = true;
@@ -39,6 +54,12 @@ public class NarrativeSession {
     @Column(nullable = false)
     private Integer stepCount = 0;
     
+    // Verrou optimiste : une copie en mémoire périmée (NarrativeSessionStore) ne peut pas écraser
+    // une session modifiée entre-temps, par exemple clôturée par NarrativeSessionReaper
+    @Version
+    @Column(nullable = false)
+    private long version;
+    
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,54 @@
+package sn.codiallo.ecoBuddy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Une étape d'une session narrative (choix effectué + chapitre obtenu).
+ * Écrite une seule fois ; seules les dernières étapes sont conservées,
+ * les plus anciennes étant résumées dans NarrativeSession.historySummary.
+ * Le texte du chapitre n'est pas recopié : l'étape référence son hash.
+ */
+@Entity
+@Table(name = "narrative_steps",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"session_id", "step_number"}),
+       indexes = @Index(name = "idx_narrative_steps_chapter", columnList = "chapter_hash"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NarrativeStep {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "session_id", nullable = false)
+    private NarrativeSession session;
+
+    @Column(name = "step_number", nullable = false)
+    private Integer stepNumber;
+
+    @Column(length = 500)
+    private String choice;
+
+    @Column(length = 200)
+    private String title;
+
+    // Contenu du chapitre dans la table chapters (voir StoredChapter)
+    @Column(name = "chapter_hash", length = 64)
+    private String chapterHash;
+
+    // Contenu résolu au chargement (NarrativeHistoryService), non persisté
+    @Transient
+    private String content;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
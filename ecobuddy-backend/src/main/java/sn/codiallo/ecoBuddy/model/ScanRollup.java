@@ -0,0 +1,38 @@
+package sn.codiallo.ecoBuddy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Compteur agrégé de scans par (objet, jour, région).
+ * Alimenté par ScanAnalyticsService, jamais par les lignes de scan brutes.
+ */
+@Entity
+@Table(name = "scan_rollups",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"object_name", "scan_day", "region"}),
+       indexes = @Index(name = "idx_scan_rollups_day", columnList = "scan_day"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "object_name", nullable = false, length = 100)
+    private String objectName;
+
+    @Column(name = "scan_day", nullable = false)
+    private LocalDate scanDay;
+
+    @Column(nullable = false, length = 100)
+    private String region;
+
+    @Column(name = "scan_count", nullable = false)
+    private Long scanCount = 0L;
+}
@@ -0,0 +1,38 @@
+package sn.codiallo.ecoBuddy.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Chapitre généré, adressé par le SHA-256 de son contenu normalisé.
+ * Les sessions et les étapes ne gardent que le hash : un même chapitre (ouverture
+ * pré-générée, fallback) n'est stocké qu'une fois. Immuable une fois inséré.
+ */
+@Entity
+@Table(name = "chapters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredChapter {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(length = 200)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    // Chapitre complet (JSON normalisé, ou texte brut pour l'ancien format)
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
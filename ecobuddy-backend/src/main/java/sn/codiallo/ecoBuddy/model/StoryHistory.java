@@ -9,7 +9,8 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "story_history")
+@Table(name = "story_history",
+       indexes = @Index(name = "idx_story_history_user_completed", columnList = "user_id, completed_at, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
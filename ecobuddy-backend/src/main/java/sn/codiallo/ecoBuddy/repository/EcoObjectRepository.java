@@ -6,6 +6,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import sn.codiallo.ecoBuddy.model.EcoObject;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,4 +21,8 @@ public interface EcoObjectRepository extends JpaRepository<EcoObject, Long> {
     List<EcoObject> findByNameContainingIgnoreCaseAndIsActiveTrue(@Param("keyword") String keyword);
     
     boolean existsByNameIgnoreCase(String name);
+
+    // Dernière modification du catalogue (actifs et désactivés), pour détecter les changements
+    @Query("SELECT MAX(COALESCE(e.updatedAt, e.createdAt)) FROM EcoObject e")
+    LocalDateTime findLastModifiedAt();
 }
\ No newline at end of file
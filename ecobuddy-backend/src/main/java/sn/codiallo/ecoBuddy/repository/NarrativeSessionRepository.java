@@ -1,10 +1,16 @@
 package sn.codiallo.ecoBuddy.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import sn.codiallo.ecoBuddy.model.NarrativeSession;
 import sn.codiallo.ecoBuddy.model.User;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,8 +19,44 @@ public interface NarrativeSessionRepository extends JpaRepository<NarrativeSessi
     
     Optional<NarrativeSession> findBySessionId(String sessionId);
     
+    // Chargement dans NarrativeSessionStore : l'utilisateur est lu avec la session
+    @Query("SELECT s FROM NarrativeSession s JOIN FETCH s.user WHERE s.sessionId = :sessionId")
+    Optional<NarrativeSession> findWithUserBySessionId(@Param("sessionId") String sessionId);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE NarrativeSession s SET s.isActive = false, s.version = s.version + 1, s.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE s.user.id = :userId AND s.isActive = true")
+    int deactivateActiveSessions(@Param("userId") Long userId);
+    
     List<NarrativeSession> findByUserAndIsActiveTrue(User user);
     
+    // Sessions actives sans activité depuis cutoff, par lots (NarrativeSessionReaper)
+    @Query("SELECT s.id FROM NarrativeSession s WHERE s.isActive = true " +
+           "AND COALESCE(s.updatedAt, s.createdAt) < :cutoff ORDER BY s.id")
+    List<Long> findIdleActiveIds(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+    
+    // Parmi ids, sessions toujours actives et inactives depuis cutoff, verrouillées jusqu'à la fin du lot
+    @Query(value = "SELECT id FROM narrative_sessions WHERE id IN (:ids) AND is_active = true " +
+                   "AND COALESCE(updated_at, created_at) < :cutoff FOR UPDATE", nativeQuery = true)
+    List<Long> lockIdleActiveIds(@Param("ids") List<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+    
+    // Session abandonnée : désactivée et allégée (le chapitre courant n'est plus utile)
+    @Modifying
+    @Transactional
+    @Query("UPDATE NarrativeSession s SET s.isActive = false, s.currentStory = null, s.currentChapterHash = null, " +
+           "s.version = s.version + 1, s.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE s.id IN :ids AND s.isActive = true AND COALESCE(s.updatedAt, s.createdAt) < :cutoff")
+    int abandon(@Param("ids") List<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+    
+    // Choix des sessions encore actives et inactives depuis cutoff (avant abandon, qui change updated_at)
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM narrative_session_choices WHERE session_id IN (" +
+                   "SELECT s.id FROM narrative_sessions s WHERE s.id IN (:ids) AND s.is_active = true " +
+                   "AND COALESCE(s.updated_at, s.created_at) < :cutoff)", nativeQuery = true)
+    int deleteChoices(@Param("ids") List<Long> ids, @Param("cutoff") LocalDateTime cutoff);
+    
     List<NarrativeSession> findByUserOrderByCreatedAtDesc(User user);
     
     Optional<NarrativeSession> findByUserAndIsActiveTrueOrderByUpdatedAtDesc(User user);
@@ -0,0 +1,28 @@
+package sn.codiallo.ecoBuddy.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.NarrativeStep;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NarrativeStepRepository extends JpaRepository<NarrativeStep, Long> {
+
+    // Étapes conservées d'une session, de la plus ancienne à la plus récente
+    List<NarrativeStep> findBySessionOrderByStepNumberAsc(NarrativeSession session);
+
+    // Étapes des sessions encore actives et inactives depuis cutoff (NarrativeSessionReaper, avant abandon)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM NarrativeStep st WHERE st.session.id IN (" +
+           "SELECT s.id FROM NarrativeSession s WHERE s.id IN :sessionIds AND s.isActive = true " +
+           "AND COALESCE(s.updatedAt, s.createdAt) < :cutoff)")
+    int deleteBySessionIds(@Param("sessionIds") List<Long> sessionIds, @Param("cutoff") LocalDateTime cutoff);
+}
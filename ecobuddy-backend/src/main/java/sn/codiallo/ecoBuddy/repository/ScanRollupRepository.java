@@ -0,0 +1,50 @@
+package sn.codiallo.ecoBuddy.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import sn.codiallo.ecoBuddy.model.ScanRollup;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ScanRollupRepository extends JpaRepository<ScanRollup, Long> {
+
+    // Incrémente le compteur (objet, jour, région) en une seule requête
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO scan_rollups (object_name, scan_day, region, scan_count) " +
+                   "VALUES (:objectName, :scanDay, :region, :delta) " +
+                   "ON DUPLICATE KEY UPDATE scan_count = scan_count + :delta",
+           nativeQuery = true)
+    int upsertCount(@Param("objectName") String objectName,
+                    @Param("scanDay") LocalDate scanDay,
+                    @Param("region") String region,
+                    @Param("delta") long delta);
+
+    // Top N des objets les plus scannés sur une période, optionnellement pour une région
+    @Query("SELECT r.objectName, SUM(r.scanCount) FROM ScanRollup r " +
+           "WHERE r.scanDay BETWEEN :from AND :to " +
+           "AND (:region IS NULL OR r.region = :region) " +
+           "GROUP BY r.objectName ORDER BY SUM(r.scanCount) DESC")
+    List<Object[]> findTopObjects(@Param("from") LocalDate from,
+                                  @Param("to") LocalDate to,
+                                  @Param("region") String region,
+                                  Pageable pageable);
+
+    // Série journalière, optionnellement filtrée par objet et/ou région
+    @Query("SELECT r.scanDay, SUM(r.scanCount) FROM ScanRollup r " +
+           "WHERE r.scanDay BETWEEN :from AND :to " +
+           "AND (:objectName IS NULL OR r.objectName = :objectName) " +
+           "AND (:region IS NULL OR r.region = :region) " +
+           "GROUP BY r.scanDay ORDER BY r.scanDay ASC")
+    List<Object[]> findDailySeries(@Param("from") LocalDate from,
+                                   @Param("to") LocalDate to,
+                                   @Param("objectName") String objectName,
+                                   @Param("region") String region);
+}
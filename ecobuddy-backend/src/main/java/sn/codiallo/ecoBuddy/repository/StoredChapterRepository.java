@@ -0,0 +1,45 @@
+package sn.codiallo.ecoBuddy.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import sn.codiallo.ecoBuddy.model.StoredChapter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StoredChapterRepository extends JpaRepository<StoredChapter, String> {
+
+    // Insertion idempotente : un chapitre déjà présent (même hash) est ignoré
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO chapters (hash, title, content, payload, created_at) " +
+                   "VALUES (:hash, :title, :content, :payload, NOW())", nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash,
+                       @Param("title") String title,
+                       @Param("content") String content,
+                       @Param("payload") String payload);
+
+    // Chapitres créés avant cutoff qu'aucune session ni étape ne référence, par lots (ordre des hash)
+    @Query(value = "SELECT c.hash FROM chapters c WHERE c.created_at < :cutoff AND c.hash > :after " +
+                   "AND NOT EXISTS (SELECT 1 FROM narrative_sessions s WHERE s.current_chapter_hash = c.hash) " +
+                   "AND NOT EXISTS (SELECT 1 FROM narrative_steps st WHERE st.chapter_hash = c.hash) " +
+                   "ORDER BY c.hash LIMIT :limit", nativeQuery = true)
+    List<String> findUnreferencedHashes(@Param("cutoff") LocalDateTime cutoff,
+                                        @Param("after") String after,
+                                        @Param("limit") int limit);
+
+    // Références revérifiées au moment de la suppression
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM chapters WHERE hash IN (:hashes) " +
+                   "AND NOT EXISTS (SELECT 1 FROM narrative_sessions s WHERE s.current_chapter_hash = chapters.hash) " +
+                   "AND NOT EXISTS (SELECT 1 FROM narrative_steps st WHERE st.chapter_hash = chapters.hash)",
+           nativeQuery = true)
+    int deleteUnreferenced(@Param("hashes") Collection<String> hashes);
+}
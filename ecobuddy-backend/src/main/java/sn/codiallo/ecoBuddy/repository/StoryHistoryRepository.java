@@ -3,12 +3,15 @@ package sn.codiallo.ecoBuddy.repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import sn.codiallo.ecoBuddy.model.StoryHistory;
 import sn.codiallo.ecoBuddy.model.User;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +24,31 @@ public interface StoryHistoryRepository extends JpaRepository<StoryHistory, Long
     // Récupérer l'historique paginé d'un utilisateur
     Page<StoryHistory> findByUserOrderByCompletedAtDesc(User user, Pageable pageable);
 
+    // Première page (ou page par offset pour les anciens clients), index (user_id, completed_at, id)
+    @Query("SELECT sh FROM StoryHistory sh WHERE sh.user.id = :userId ORDER BY sh.completedAt DESC, sh.id DESC")
+    List<StoryHistory> findPage(@Param("userId") Long userId, Pageable pageable);
+
+    // Page suivante par curseur (keyset) : histoires strictement plus anciennes que (completedAt, id)
+    @Query("SELECT sh FROM StoryHistory sh WHERE sh.user.id = :userId " +
+           "AND (sh.completedAt < :completedAt OR (sh.completedAt = :completedAt AND sh.id < :id)) " +
+           "ORDER BY sh.completedAt DESC, sh.id DESC")
+    List<StoryHistory> findPageAfter(@Param("userId") Long userId,
+                                     @Param("completedAt") LocalDateTime completedAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+
+    // Statistiques de l'historique en une seule requête d'agrégat
+    @Query("SELECT COALESCE(SUM(CASE WHEN sh.status = :completed THEN 1 ELSE 0 END), 0) AS completedCount, " +
+           "COALESCE(SUM(sh.totalPoints), 0) AS totalPoints, COUNT(sh) AS totalCount " +
+           "FROM StoryHistory sh WHERE sh.user.id = :userId")
+    HistoryStats getStats(@Param("userId") Long userId, @Param("completed") StoryHistory.StoryStatus completed);
+
+    interface HistoryStats {
+        Long getCompletedCount();
+        Long getTotalPoints();
+        Long getTotalCount();
+    }
+
     // Récupérer une histoire spécifique par son sessionId
     Optional<StoryHistory> findBySessionIdAndUser(String sessionId, User user);
 
@@ -37,6 +65,17 @@ public interface StoryHistoryRepository extends JpaRepository<StoryHistory, Long
     // Compter les histoires par statut
     Long countByUserAndStatusOrderByCompletedAtDesc(User user, StoryHistory.StoryStatus status);
 
+    // Historique ABANDONED des sessions abandonnées, en une instruction (avant leur désactivation)
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO story_history (user_id, session_id, title, summary, total_points, chapter_count, status, theme, completed_at) " +
+                   "SELECT s.user_id, s.session_id, 'Histoire inachevée', s.history_summary, 0, s.step_count, 'ABANDONED', 'general', NOW() " +
+                   "FROM narrative_sessions s WHERE s.id IN (:sessionIds) AND s.is_active = true " +
+                   "AND COALESCE(s.updated_at, s.created_at) < :cutoff " +
+                   "AND NOT EXISTS (SELECT 1 FROM story_history h WHERE h.session_id = s.session_id AND h.user_id = s.user_id)",
+           nativeQuery = true)
+    int insertAbandonedForSessions(@Param("sessionIds") List<Long> sessionIds, @Param("cutoff") LocalDateTime cutoff);
+
     // Vérifier si une histoire existe déjà (éviter les doublons)
     boolean existsBySessionIdAndUser(String sessionId, User user);
 }
\ No newline at end of file
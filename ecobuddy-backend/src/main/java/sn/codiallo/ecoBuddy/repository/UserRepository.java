@@ -1,7 +1,11 @@
 package sn.codiallo.ecoBuddy.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import sn.codiallo.ecoBuddy.model.User;
 
 import java.util.Optional;
@@ -13,4 +17,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
     Long countByPointsGreaterThan(Integer points);
+
+    // Incrément atomique des points (pas de lecture-modification-écriture)
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.points = u.points + :points WHERE u.id = :userId")
+    int addPoints(@Param("userId") Long userId, @Param("points") int points);
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package sn.codiallo.ecoBuddy.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -30,6 +32,9 @@ public class AuthService {
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
 
+    @Value("${auth.login.history-page-size:5}")
+    private int loginHistoryPageSize;
+
     public AuthResponse signup(SignupRequest request) {
         if (userRepository.existsByUsername(request.getUsername())) {
             throw new RuntimeException("Username is already taken!");
@@ -67,13 +72,23 @@ public class AuthService {
 
         String token = jwtUtil.generateToken(user);
 
-        // Load a user's narrative history
-        List<StoryHistory> storyHistories = storyHistoryRepository.findByUserOrderByCompletedAtDesc(user);
+        if (loginHistoryPageSize <= 0) {
+            return new AuthResponse(token, user);
+        }
+
+        // Première page seulement (requête bornée) ; le client charge la suite via /narration/history
+        List<StoryHistory> storyHistories = storyHistoryRepository.findPage(user.getId(),
+                PageRequest.of(0, loginHistoryPageSize + 1));
+        boolean hasMore = storyHistories.size() > loginHistoryPageSize;
+        if (hasMore) {
+            storyHistories = storyHistories.subList(0, loginHistoryPageSize);
+        }
         List<StoryHistoryResponse> historyResponses = storyHistories.stream()
                 .map(StoryHistoryResponse::new)
                 .toList();
+        String nextCursor = hasMore ? StoryHistoryCursor.of(storyHistories.get(storyHistories.size() - 1)).encode() : null;
 
-        return new AuthResponse(token, user, historyResponses);
+        return new AuthResponse(token, user, historyResponses, nextCursor);
     }
 
     public AuthResponse updateProfile(String currentUsername, UpdateProfileRequest request) {
@@ -101,13 +116,7 @@ public class AuthService {
         // Générer un nouveau token avec les nouvelles informations
         String newToken = jwtUtil.generateToken(updatedUser);
 
-        // Load user's narrative history
-        List<StoryHistory> storyHistories = storyHistoryRepository.findByUserOrderByCompletedAtDesc(updatedUser);
-        List<StoryHistoryResponse> historyResponses = storyHistories.stream()
-                .map(StoryHistoryResponse::new)
-                .toList();
-
-        return new AuthResponse(newToken, updatedUser, historyResponses);
+        return new AuthResponse(newToken, updatedUser);
     }
 
     public AuthResponse updateLocation(String currentUsername, UpdateLocationRequest request) {
@@ -127,13 +136,7 @@ public class AuthService {
         // Générer un nouveau token avec les nouvelles informations
         String newToken = jwtUtil.generateToken(updatedUser);
 
-        // Load user's narrative history
-        List<StoryHistory> storyHistories = storyHistoryRepository.findByUserOrderByCompletedAtDesc(updatedUser);
-        List<StoryHistoryResponse> historyResponses = storyHistories.stream()
-                .map(StoryHistoryResponse::new)
-                .toList();
-
-        return new AuthResponse(newToken, updatedUser, historyResponses);
+        return new AuthResponse(newToken, updatedUser);
     }
 
     public boolean isLocationCompleted(String username) {
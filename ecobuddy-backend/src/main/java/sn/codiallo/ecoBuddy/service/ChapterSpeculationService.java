@@ -0,0 +1,145 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Génération spéculative des chapitres suivants.
+ * Dès qu'un chapitre est livré, la suite de chaque choix proposé est générée pendant
+ * que l'utilisateur lit ; processChoice réutilise la suite du choix retenu (prête ou
+ * en cours) et annule les autres. Le nombre de choix spéculés dépend de la charge
+ * Gemini : tous en charge faible, un seul en charge moyenne, aucun au-delà.
+ */
+@Service
+@Slf4j
+public class ChapterSpeculationService {
+
+    private final GeminiService geminiService;
+
+    @Value("${narrative.speculation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${narrative.speculation.ttl-seconds:120}")
+    private long ttlSeconds;
+
+    @Value("${narrative.speculation.low-load-threshold:8}")
+    private int lowLoadThreshold;
+
+    @Value("${narrative.speculation.high-load-threshold:20}")
+    private int highLoadThreshold;
+
+    @Value("${narrative.speculation.max-choices-low-load:3}")
+    private int maxChoicesLowLoad;
+
+    @Value("${narrative.speculation.max-choices-medium-load:1}")
+    private int maxChoicesMediumLoad;
+
+    private final Map<String, SessionSpeculation> speculations = new ConcurrentHashMap<>();
+
+    public ChapterSpeculationService(GeminiService geminiService) {
+        this.geminiService = geminiService;
+    }
+
+    private record Speculation(Mono<String> result, Disposable subscription) {}
+
+    private record SessionSpeculation(int stepCount, long createdAt, Map<String, Speculation> byChoice) {
+        void cancelAll() {
+            byChoice.values().forEach(speculation -> speculation.subscription().dispose());
+        }
+    }
+
+    /**
+     * Lance la génération des suites d'un chapitre qui vient d'être livré.
+     */
+    public void speculate(String sessionId, int stepCount, String currentStory, List<String> choices) {
+        if (!enabled || choices == null || choices.isEmpty()) {
+            discard(sessionId);
+            return;
+        }
+
+        int budget = choicesForCurrentLoad();
+        if (budget == 0) {
+            log.debug("Gemini load too high, no speculation for session {}", sessionId);
+            discard(sessionId);
+            return;
+        }
+
+        Map<String, Speculation> byChoice = new ConcurrentHashMap<>();
+        choices.stream().limit(budget).forEach(choiceText -> {
+            Mono<String> result = geminiService.speculateNarrativeAsync(currentStory, List.of(choiceText)).cache();
+            byChoice.put(choiceText, new Speculation(result, result.subscribe()));
+        });
+
+        SessionSpeculation previous = speculations.put(sessionId,
+                new SessionSpeculation(stepCount, System.currentTimeMillis(), byChoice));
+        if (previous != null) {
+            previous.cancelAll();
+        }
+    }
+
+    /**
+     * Retire la suite spéculée du choix retenu et annule les autres.
+     * Vide si rien n'a été spéculé pour cette étape ou ce choix ; le Mono retourné
+     * est lui-même vide si la spéculation a échoué.
+     */
+    public Optional<Mono<String>> claim(String sessionId, int stepCount, String choiceText) {
+        SessionSpeculation session = speculations.remove(sessionId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (session.stepCount() != stepCount || isExpired(session)) {
+            session.cancelAll();
+            return Optional.empty();
+        }
+
+        Speculation winner = session.byChoice().remove(choiceText);
+        session.cancelAll();
+        if (winner == null) {
+            return Optional.empty();
+        }
+        log.info("Using speculated chapter for session {} (step {})", sessionId, stepCount);
+        return Optional.of(winner.result());
+    }
+
+    public void discard(String sessionId) {
+        SessionSpeculation session = speculations.remove(sessionId);
+        if (session != null) {
+            session.cancelAll();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.speculation.cleanup-interval-ms:30000}")
+    public void evictExpired() {
+        speculations.entrySet().removeIf(entry -> {
+            if (isExpired(entry.getValue())) {
+                entry.getValue().cancelAll();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private int choicesForCurrentLoad() {
+        int load = geminiService.getInFlightRequests();
+        if (load < lowLoadThreshold) {
+            return maxChoicesLowLoad;
+        }
+        if (load < highLoadThreshold) {
+            return maxChoicesMediumLoad;
+        }
+        return 0;
+    }
+
+    private boolean isExpired(SessionSpeculation session) {
+        return System.currentTimeMillis() - session.createdAt() > ttlSeconds * 1000;
+    }
+}
@@ -0,0 +1,127 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sn.codiallo.ecoBuddy.model.StoredChapter;
+import sn.codiallo.ecoBuddy.repository.StoredChapterRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Chapitres adressés par contenu (table chapters). intern() calcule le hash du chapitre
+ * normalisé et ne l'insère que s'il est nouveau ; les chapitres récemment utilisés
+ * restent en mémoire (LRU borné), ce qui couvre les ouvertures et fallbacks partagés.
+ * Les chapitres que plus rien ne référence sont supprimés par deleteUnreferenced().
+ */
+@Service
+@Slf4j
+public class ChapterStore {
+
+    private static final int MAX_TITLE_LENGTH = 200;
+
+    private final StoredChapterRepository storedChapterRepository;
+    private final Map<String, StoredChapter> cache;
+
+    public ChapterStore(StoredChapterRepository storedChapterRepository,
+                        @Value("${narrative.chapter-store.cache-size:5000}") int cacheSize) {
+        this.storedChapterRepository = storedChapterRepository;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredChapter> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Enregistre le chapitre s'il n'existe pas encore et le retourne (avec son hash).
+     */
+    public StoredChapter intern(String title, String content, String payload) {
+        String hash = sha256(payload);
+        StoredChapter cached = cached(hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        String boundedTitle = title != null && title.length() > MAX_TITLE_LENGTH ? title.substring(0, MAX_TITLE_LENGTH) : title;
+        StoredChapter chapter = new StoredChapter(hash, boundedTitle, content, payload, LocalDateTime.now());
+        // En cache avant l'insertion : deleteUnreferenced() ne supprime jamais un chapitre en cache
+        synchronized (cache) {
+            cache.put(hash, chapter);
+        }
+        try {
+            if (storedChapterRepository.insertIfAbsent(hash, boundedTitle, content, payload) == 0) {
+                log.debug("Chapter {} already stored, sharing it", hash);
+            }
+        } catch (RuntimeException e) {
+            synchronized (cache) {
+                cache.remove(hash, chapter);
+            }
+            throw e;
+        }
+        return chapter;
+    }
+
+    public Optional<StoredChapter> find(String hash) {
+        if (hash == null) {
+            return Optional.empty();
+        }
+        StoredChapter cached = cached(hash);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<StoredChapter> loaded = storedChapterRepository.findById(hash);
+        loaded.ifPresent(chapter -> {
+            synchronized (cache) {
+                cache.put(hash, chapter);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Supprime au plus batchSize chapitres créés avant cutoff et non référencés (base,
+     * sessions en mémoire via inUse, cache) ; after est le dernier hash examiné au lot
+     * précédent. Retourne les hash examinés, vide quand il n'y a plus rien à parcourir.
+     */
+    public List<String> deleteUnreferenced(LocalDateTime cutoff, String after, Set<String> inUse, int batchSize) {
+        List<String> candidates = storedChapterRepository.findUnreferencedHashes(cutoff, after, batchSize);
+        // Sous le verrou du cache : intern() ne peut pas réutiliser un chapitre pendant sa suppression
+        synchronized (cache) {
+            List<String> unused = candidates.stream()
+                    .filter(hash -> !inUse.contains(hash) && !cache.containsKey(hash))
+                    .toList();
+            if (!unused.isEmpty()) {
+                int deleted = storedChapterRepository.deleteUnreferenced(unused);
+                log.debug("Deleted {} unreferenced chapters", deleted);
+            }
+        }
+        return candidates;
+    }
+
+    private StoredChapter cached(String hash) {
+        synchronized (cache) {
+            return cache.get(hash);
+        }
+    }
+
+    private String sha256(String payload) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(payload.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package sn.codiallo.ecoBuddy.service;
+
+import sn.codiallo.ecoBuddy.dto.NarrativeStreamEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture en une seule passe d'un chapitre JSON ({"title", "content", "choices",
+ * "points", "isCompleted"}) produit par Gemini, reçu d'un bloc ou par fragments.
+ * Le texte autour de l'objet (prose, ```json) est ignoré, les champs sont liés
+ * directement dans un {@link Chapter} sans arbre intermédiaire, et une réponse
+ * tronquée (maxOutputTokens) est réparée : tableau non fermé, contenu coupé.
+ * En streaming, le titre est émis dès que sa chaîne est fermée, le contenu au fil
+ * des caractères, les choix à la fermeture du tableau.
+ * Une instance par réponse, non thread-safe.
+ */
+final class ChapterStreamParser {
+
+    /**
+     * Chapitre lu. Les champs absents de la réponse sont null ;
+     * found est faux si aucun objet JSON n'a été trouvé.
+     */
+    record Chapter(boolean found, boolean truncated, String title, String content, List<String> choices,
+                   List<Integer> pointsPerChoice, Integer points, Boolean isCompleted) {
+    }
+
+    private static final int DEFAULT_ARRAY_POINTS = 10;
+
+    private final StringBuilder raw = new StringBuilder();
+    private final StringBuilder token = new StringBuilder();
+    private final StringBuilder scalar = new StringBuilder();
+    private final StringBuilder unicode = new StringBuilder();
+
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private int unicodeRemaining;
+    private boolean readingKey;
+    private String currentKey;
+
+    private String title;
+    private String content;
+    private final List<String> choices = new ArrayList<>();
+    private boolean choicesSeen;
+    private List<Integer> pointsPerChoice;
+    private Integer points;
+    private Boolean isCompleted;
+
+    /**
+     * Lit une réponse complète.
+     */
+    static Chapter parse(String text) {
+        ChapterStreamParser parser = new ChapterStreamParser();
+        if (text != null) {
+            parser.feed(text);
+        }
+        return parser.result();
+    }
+
+    /**
+     * Ajoute un fragment et retourne les événements qu'il complète, dans l'ordre.
+     */
+    List<NarrativeStreamEvent> feed(String fragment) {
+        raw.append(fragment);
+        List<NarrativeStreamEvent> events = new ArrayList<>();
+        StringBuilder contentDelta = new StringBuilder();
+
+        for (int i = 0; i < fragment.length() && !finished; i++) {
+            char c = fragment.charAt(i);
+
+            if (!started) {
+                if (c == '{') {
+                    started = true;
+                    depth = 1;
+                    readingKey = true;
+                }
+                continue;
+            }
+
+            if (inString) {
+                readStringChar(c, contentDelta, events);
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    token.setLength(0);
+                }
+                case '{', '[' -> {
+                    if (c == '[' && depth == 1) {
+                        if ("points".equals(currentKey)) {
+                            pointsPerChoice = new ArrayList<>();
+                        } else if ("choices".equals(currentKey)) {
+                            choicesSeen = true;
+                        }
+                    }
+                    depth++;
+                }
+                case '}', ']' -> {
+                    flushScalar();
+                    depth--;
+                    if (c == ']' && depth == 1 && "choices".equals(currentKey)) {
+                        emit(events, contentDelta, "choices", List.copyOf(choices));
+                    }
+                    if (depth == 0) {
+                        finished = true;
+                    }
+                }
+                case ':' -> {
+                    if (depth == 1) {
+                        readingKey = false;
+                    }
+                }
+                case ',' -> {
+                    flushScalar();
+                    if (depth == 1) {
+                        readingKey = true;
+                    }
+                }
+                default -> {
+                    if (!Character.isWhitespace(c)) {
+                        scalar.append(c);
+                    }
+                }
+            }
+        }
+
+        if (!contentDelta.isEmpty()) {
+            events.add(new NarrativeStreamEvent("content", contentDelta.toString()));
+        }
+        return events;
+    }
+
+    /**
+     * Texte brut complet reçu jusqu'ici.
+     */
+    String text() {
+        return raw.toString();
+    }
+
+    /**
+     * Chapitre lu jusqu'ici, réparé si la réponse s'arrête avant la fin de l'objet.
+     */
+    Chapter result() {
+        String finalContent = content;
+        Boolean finalCompleted = isCompleted;
+        List<Integer> finalPointsPerChoice = pointsPerChoice != null ? new ArrayList<>(pointsPerChoice) : null;
+
+        if (started && !finished) {
+            if (inString && depth == 1 && !readingKey && "content".equals(currentKey)) {
+                // Contenu coupé en cours de chaîne : garder le texte reçu
+                String partial = token.toString().trim();
+                finalContent = partial.isEmpty() ? null : partial + "...";
+            } else if (!inString && depth == 1 && "isCompleted".equals(currentKey)
+                    && ("true".contentEquals(scalar) || "false".contentEquals(scalar))) {
+                // Booléen final complet ; un nombre coupé (2 pour 25) est ignoré
+                finalCompleted = Boolean.parseBoolean(scalar.toString());
+            }
+        }
+
+        return new Chapter(started, started && !finished, title, finalContent,
+                choicesSeen ? List.copyOf(choices) : null,
+                finalPointsPerChoice, points, finalCompleted);
+    }
+
+    private void readStringChar(char c, StringBuilder contentDelta, List<NarrativeStreamEvent> events) {
+        if (unicodeRemaining > 0) {
+            unicode.append(c);
+            if (--unicodeRemaining == 0) {
+                try {
+                    appendChar((char) Integer.parseInt(unicode.toString(), 16), contentDelta);
+                } catch (NumberFormatException e) {
+                    // Séquence invalide : ignorée
+                }
+                unicode.setLength(0);
+            }
+            return;
+        }
+
+        if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n' -> appendChar('\n', contentDelta);
+                case 't' -> appendChar('\t', contentDelta);
+                case 'r' -> appendChar('\r', contentDelta);
+                case 'b' -> appendChar('\b', contentDelta);
+                case 'f' -> appendChar('\f', contentDelta);
+                case 'u' -> unicodeRemaining = 4;
+                default -> appendChar(c, contentDelta);
+            }
+            return;
+        }
+
+        if (c == '\\') {
+            escape = true;
+        } else if (c == '"') {
+            inString = false;
+            onStringEnd(contentDelta, events);
+        } else {
+            appendChar(c, contentDelta);
+        }
+    }
+
+    private void appendChar(char c, StringBuilder contentDelta) {
+        token.append(c);
+        if (depth == 1 && !readingKey && "content".equals(currentKey)) {
+            contentDelta.append(c);
+        }
+    }
+
+    private void onStringEnd(StringBuilder contentDelta, List<NarrativeStreamEvent> events) {
+        String value = token.toString();
+        if (depth == 1 && readingKey) {
+            currentKey = value;
+        } else if (depth == 1 && "title".equals(currentKey)) {
+            title = value;
+            emit(events, contentDelta, "title", value);
+        } else if (depth == 1 && "content".equals(currentKey)) {
+            content = value;
+        } else if (depth == 2 && "choices".equals(currentKey)) {
+            choices.add(value);
+        } else if (depth == 2 && "points".equals(currentKey) && pointsPerChoice != null) {
+            pointsPerChoice.add(toInt(value, DEFAULT_ARRAY_POINTS));
+        }
+    }
+
+    private void flushScalar() {
+        if (scalar.isEmpty()) {
+            return;
+        }
+        String value = scalar.toString();
+        scalar.setLength(0);
+
+        if (depth == 1 && "points".equals(currentKey)) {
+            points = toInt(value, null);
+        } else if (depth == 1 && "isCompleted".equals(currentKey)) {
+            isCompleted = Boolean.parseBoolean(value);
+        } else if (depth == 2 && "points".equals(currentKey) && pointsPerChoice != null) {
+            pointsPerChoice.add(toInt(value, DEFAULT_ARRAY_POINTS));
+        }
+    }
+
+    private Integer toInt(String value, Integer defaultValue) {
+        try {
+            return (int) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // Le contenu en attente part avant tout autre événement pour conserver l'ordre
+    private void emit(List<NarrativeStreamEvent> events, StringBuilder contentDelta, String event, Object data) {
+        if (!contentDelta.isEmpty()) {
+            events.add(new NarrativeStreamEvent("content", contentDelta.toString()));
+            contentDelta.setLength(0);
+        }
+        events.add(new NarrativeStreamEvent(event, data));
+    }
+}
@@ -0,0 +1,294 @@
+package sn.codiallo.ecoBuddy.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import sn.codiallo.ecoBuddy.dto.CatalogDeltaResponse;
+import sn.codiallo.ecoBuddy.dto.EcoObjectResponse;
+import sn.codiallo.ecoBuddy.dto.ScanResponse;
+import sn.codiallo.ecoBuddy.model.EcoObject;
+import sn.codiallo.ecoBuddy.repository.EcoObjectRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Catalogue versionné des EcoObjects.
+ * Un instantané immuable (JSON brut + gzip + un ETag fort par encodage) est reconstruit uniquement
+ * lorsque la table eco_objects change ; /scanner/objects sert ces octets tels quels.
+ * La version est l'horodatage (ms UTC) de la dernière modification ; les objets
+ * désactivés (isActive = false) sont remontés comme supprimés dans les deltas, de même
+ * que les lignes supprimées physiquement, repérées d'une reconstruction à l'autre. Ces
+ * suppressions ne sont connues que depuis le démarrage : un client plus ancien reçoit
+ * resync = true et doit recharger le catalogue complet.
+ * Chaque objet actif dispose aussi d'un modèle de réponse de scan précalculé,
+ * ce qui évite requêtes et heuristiques sur le chemin du scan.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EcoCatalogService {
+
+    private static final int MAX_TRACKED_DELETIONS = 10_000;
+
+    private final EcoObjectRepository ecoObjectRepository;
+    private final ObjectMapper objectMapper;
+
+    private volatile CatalogSnapshot snapshot;
+
+    public record CatalogEntry(EcoObject ecoObject, long version) {
+        public boolean isActive() {
+            return Boolean.TRUE.equals(ecoObject.getIsActive());
+        }
+    }
+
+    public record CatalogSnapshot(long version, String etag, byte[] json, byte[] gzip,
+                                  List<CatalogEntry> entries, Map<String, ScanTemplate> templatesByName,
+                                  LocalDateTime lastModifiedAt, long rowCount,
+                                  Map<Long, Long> deletedIds, long deletionsTrackedSince) {
+
+        /**
+         * ETag de la représentation servie : les octets gzip et JSON diffèrent, leurs ETags forts aussi.
+         */
+        public String etag(boolean gzip) {
+            return gzip ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag;
+        }
+    }
+
+    /**
+     * Réponse de scan immuable pour un objet du catalogue ; seuls les champs
+     * propres à la requête (points) sont ajoutés au moment du scan.
+     */
+    public record ScanTemplate(String name, Double carbonImpact, Boolean recyclable, String alternative,
+                               String description, String ecoTips, String objectType, String funFact,
+                               List<String> recyclingSuggestions, List<String> alternatives) {
+
+        static ScanTemplate of(EcoObject ecoObject) {
+            String name = ecoObject.getName();
+            List<String> recyclingSuggestions = ecoObject.getEcoTips() != null
+                    ? Arrays.stream(ecoObject.getEcoTips().split("\\|")).toList()
+                    : List.of();
+            return new ScanTemplate(
+                    name,
+                    ecoObject.getCarbonImpact(),
+                    ecoObject.getRecyclable(),
+                    ecoObject.getAlternative(),
+                    ecoObject.getDescription(),
+                    ecoObject.getEcoTips(),
+                    ScanHeuristics.determineObjectType(name),
+                    ScanHeuristics.generateFunFact(name),
+                    recyclingSuggestions,
+                    List.copyOf(ScanHeuristics.getDefaultAlternatives(name))
+            );
+        }
+
+        public ScanResponse toScanResponse(int pointsEarned) {
+            return new ScanResponse(name, carbonImpact, recyclable, alternative, description,
+                    ecoTips, pointsEarned, objectType, funFact, null);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${scanner.catalog.refresh-interval-ms:60000}",
+               initialDelayString = "${scanner.catalog.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            LocalDateTime lastModifiedAt = ecoObjectRepository.findLastModifiedAt();
+            long rowCount = ecoObjectRepository.count();
+
+            CatalogSnapshot current = snapshot;
+            if (current != null && current.rowCount() == rowCount
+                    && Objects.equals(current.lastModifiedAt(), lastModifiedAt)) {
+                return;
+            }
+
+            rebuild(lastModifiedAt, rowCount);
+        } catch (Exception e) {
+            // Garder l'instantané précédent si la base est indisponible
+            log.error("Failed to refresh EcoObject catalog: ", e);
+        }
+    }
+
+    public CatalogSnapshot getSnapshot() {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild(ecoObjectRepository.findLastModifiedAt(), ecoObjectRepository.count());
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Recherche en mémoire : nom exact, puis nom contenant le libellé, puis synonyme.
+     */
+    public Optional<ScanTemplate> findTemplate(String objectName) {
+        if (objectName == null || objectName.isBlank()) {
+            return Optional.empty();
+        }
+        Map<String, ScanTemplate> templates = getSnapshot().templatesByName();
+        String key = objectName.trim().toLowerCase();
+
+        ScanTemplate exact = templates.get(key);
+        if (exact != null) {
+            return Optional.of(exact);
+        }
+
+        for (Map.Entry<String, ScanTemplate> entry : templates.entrySet()) {
+            if (entry.getKey().contains(key)) {
+                return Optional.of(entry.getValue());
+            }
+        }
+
+        return Optional.ofNullable(templates.get(ScanHeuristics.toStandardName(key)));
+    }
+
+    public CatalogDeltaResponse getDelta(long since) {
+        CatalogSnapshot current = getSnapshot();
+        if (since < current.deletionsTrackedSince()) {
+            // Des lignes ont pu être supprimées avant le suivi : seul un rechargement complet est sûr
+            return new CatalogDeltaResponse(since, current.version(), List.of(), List.of(), true);
+        }
+
+        List<EcoObjectResponse> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        current.deletedIds().forEach((id, version) -> {
+            if (version > since) {
+                removed.add(id);
+            }
+        });
+        for (CatalogEntry entry : current.entries()) {
+            if (entry.version() <= since) {
+                continue;
+            }
+            if (entry.isActive()) {
+                changed.add(EcoObjectResponse.fromEcoObject(entry.ecoObject()));
+            } else {
+                removed.add(entry.ecoObject().getId());
+            }
+        }
+
+        return new CatalogDeltaResponse(since, current.version(), changed, removed, false);
+    }
+
+    private synchronized void rebuild(LocalDateTime lastModifiedAt, long rowCount) {
+        List<EcoObject> all = new ArrayList<>(ecoObjectRepository.findAll());
+        all.sort(Comparator.comparing(EcoObject::getName, String.CASE_INSENSITIVE_ORDER));
+
+        List<CatalogEntry> entries = all.stream()
+                .map(ecoObject -> new CatalogEntry(ecoObject, toVersion(ecoObject)))
+                .toList();
+
+        List<EcoObjectResponse> active = entries.stream()
+                .filter(CatalogEntry::isActive)
+                .map(entry -> EcoObjectResponse.fromEcoObject(entry.ecoObject()))
+                .toList();
+
+        // Ordre alphabétique conservé pour une recherche par sous-chaîne déterministe
+        Map<String, ScanTemplate> templatesByName = new LinkedHashMap<>();
+        entries.stream()
+                .filter(CatalogEntry::isActive)
+                .forEach(entry -> templatesByName.putIfAbsent(
+                        entry.ecoObject().getName().toLowerCase(), ScanTemplate.of(entry.ecoObject())));
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(active);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize EcoObject catalog", e);
+        }
+
+        long version = toVersion(lastModifiedAt);
+        CatalogSnapshot previous = snapshot;
+        if (previous != null && version <= previous.version()) {
+            // Suppression physique sans changement d'horodatage : forcer une nouvelle version
+            version = previous.version() + 1;
+        }
+
+        // Lignes présentes dans l'instantané précédent et disparues de la table
+        Map<Long, Long> deletedIds = new LinkedHashMap<>(previous != null ? previous.deletedIds() : Map.of());
+        long deletionsTrackedSince = previous != null ? previous.deletionsTrackedSince() : version;
+        Set<Long> currentIds = entries.stream().map(entry -> entry.ecoObject().getId()).collect(Collectors.toSet());
+        deletedIds.keySet().removeAll(currentIds);
+        if (previous != null) {
+            for (CatalogEntry entry : previous.entries()) {
+                Long id = entry.ecoObject().getId();
+                if (!currentIds.contains(id)) {
+                    deletedIds.put(id, version);
+                }
+            }
+        }
+        // Suivi borné : les plus anciennes suppressions oubliées imposent un rechargement complet
+        Iterator<Map.Entry<Long, Long>> oldest = deletedIds.entrySet().iterator();
+        while (deletedIds.size() > MAX_TRACKED_DELETIONS && oldest.hasNext()) {
+            deletionsTrackedSince = Math.max(deletionsTrackedSince, oldest.next().getValue());
+            oldest.remove();
+        }
+
+        String etag = "\"" + version + "-" + sha256Prefix(json) + "\"";
+        snapshot = new CatalogSnapshot(version, etag, json, gzip(json), entries,
+                Collections.unmodifiableMap(templatesByName), lastModifiedAt, rowCount,
+                Collections.unmodifiableMap(deletedIds), deletionsTrackedSince);
+
+        log.info("EcoObject catalog rebuilt: version={}, active={}, total={}, json={}B",
+                version, active.size(), entries.size(), json.length);
+    }
+
+    private long toVersion(EcoObject ecoObject) {
+        LocalDateTime modifiedAt = ecoObject.getUpdatedAt() != null ? ecoObject.getUpdatedAt() : ecoObject.getCreatedAt();
+        return toVersion(modifiedAt);
+    }
+
+    private long toVersion(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+
+    private byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compress EcoObject catalog", e);
+        }
+        return out.toByteArray();
+    }
+
+    private String sha256Prefix(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
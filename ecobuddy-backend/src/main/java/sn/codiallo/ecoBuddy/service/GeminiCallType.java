@@ -0,0 +1,27 @@
+package sn.codiallo.ecoBuddy.service;
+
+/**
+ * Nature d'un appel Gemini : chaque type a sa propre cloison de concurrence,
+ * sa propre fenêtre de latences (timeouts adaptatifs) et sa priorité dans
+ * GeminiScheduler (0 = la plus haute ; seule la narration est au premier plan).
+ */
+public enum GeminiCallType {
+    NARRATIVE(0),
+    SPECULATIVE(2),
+    STORY_START(3),
+    SCAN_ANALYSIS(1);
+
+    private final int priority;
+
+    GeminiCallType(int priority) {
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isForeground() {
+        return this == NARRATIVE;
+    }
+}
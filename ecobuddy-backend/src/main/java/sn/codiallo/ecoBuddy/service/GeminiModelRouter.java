@@ -0,0 +1,162 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routage des appels Gemini vers les modèles : pour chaque type d'appel, une liste
+ * ordonnée de paliers "modèle[:timeout-ms]" (gemini.routing.*). GeminiService essaie
+ * le premier palier et passe au suivant sur timeout ou erreur, avant le fallback
+ * statique. Latence et erreurs sont mesurées par modèle ; un modèle dont le taux
+ * d'erreur récent dépasse demote-error-rate passe derrière les modèles sains ; ce taux
+ * décroît aussi avec le temps, pour que le modèle soit réessayé en premier palier.
+ */
+@Service
+@Slf4j
+public class GeminiModelRouter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${gemini.routing.narrative:gemini-1.5-flash}")
+    private String narrativeRoutes;
+
+    @Value("${gemini.routing.speculative:gemini-1.5-flash}")
+    private String speculativeRoutes;
+
+    @Value("${gemini.routing.story-start:gemini-1.5-flash}")
+    private String storyStartRoutes;
+
+    @Value("${gemini.routing.scan-analysis:gemini-1.5-flash}")
+    private String scanAnalysisRoutes;
+
+    @Value("${gemini.routing.error-rate-decay:0.1}")
+    private double errorRateDecay;
+
+    @Value("${gemini.routing.demote-error-rate:0.5}")
+    private double demoteErrorRate;
+
+    @Value("${gemini.routing.cascade-budget-ms:12000}")
+    private long cascadeBudgetMs;
+
+    private final Map<GeminiCallType, List<ModelRoute>> routes = new EnumMap<>(GeminiCallType.class);
+
+    // Taux d'erreur récent par modèle (moyenne mobile exponentielle)
+    private final Map<String, Double> errorRates = new ConcurrentHashMap<>();
+
+    public GeminiModelRouter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Palier de routage ; timeout null = timeout adaptatif de GeminiResilience seul.
+     */
+    public record ModelRoute(String model, Duration timeout) {
+
+        public String generateContentPath() {
+            return "/v1beta/models/" + model + ":generateContent";
+        }
+
+        public String streamGenerateContentPath() {
+            return "/v1beta/models/" + model + ":streamGenerateContent";
+        }
+
+        public Duration capTimeout(Duration adaptive) {
+            return timeout != null && timeout.compareTo(adaptive) < 0 ? timeout : adaptive;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        routes.put(GeminiCallType.NARRATIVE, parse(narrativeRoutes));
+        routes.put(GeminiCallType.SPECULATIVE, parse(speculativeRoutes));
+        routes.put(GeminiCallType.STORY_START, parse(storyStartRoutes));
+        routes.put(GeminiCallType.SCAN_ANALYSIS, parse(scanAnalysisRoutes));
+        routes.forEach((type, tiers) -> log.info("Gemini routes for {}: {}", type, tiers));
+    }
+
+    /**
+     * Temps total accordé à une cascade de paliers : chaque palier ne dispose que du
+     * temps restant sur cette échéance.
+     */
+    public Duration cascadeBudget() {
+        return Duration.ofMillis(cascadeBudgetMs);
+    }
+
+    /**
+     * Paliers à essayer dans l'ordre pour ce type (jamais vide).
+     */
+    public List<ModelRoute> routes(GeminiCallType type) {
+        List<ModelRoute> ordered = new ArrayList<>(routes.get(type));
+        // Tri stable : l'ordre configuré est conservé parmi les modèles sains
+        ordered.sort(Comparator.comparing(route -> isDemoted(route.model())));
+        return ordered;
+    }
+
+    public void recordSuccess(GeminiCallType type, ModelRoute route, long latencyNanos) {
+        record(type, route, latencyNanos, "success");
+        errorRates.merge(route.model(), 0.0, (rate, ignored) -> rate * (1 - errorRateDecay));
+    }
+
+    public void recordFailure(GeminiCallType type, ModelRoute route, long latencyNanos, Throwable ex) {
+        record(type, route, latencyNanos, "error");
+        meterRegistry.counter("gemini.model.errors", "model", route.model(), "type", type.name(),
+                "exception", ex.getClass().getSimpleName()).increment();
+        errorRates.merge(route.model(), errorRateDecay, (rate, ignored) -> rate * (1 - errorRateDecay) + errorRateDecay);
+    }
+
+    public void recordFallthrough(GeminiCallType type, ModelRoute from) {
+        meterRegistry.counter("gemini.model.fallthrough", "model", from.model(), "type", type.name()).increment();
+    }
+
+    @Scheduled(fixedDelayString = "${gemini.routing.recovery-interval-ms:30000}")
+    public void decayErrorRates() {
+        errorRates.replaceAll((model, rate) -> rate * (1 - errorRateDecay));
+    }
+
+    private void record(GeminiCallType type, ModelRoute route, long latencyNanos, String outcome) {
+        Timer.builder("gemini.model.latency")
+                .tag("model", route.model())
+                .tag("type", type.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(latencyNanos));
+    }
+
+    private boolean isDemoted(String model) {
+        return errorRates.getOrDefault(model, 0.0) >= demoteErrorRate;
+    }
+
+    // "gemini-1.5-flash-8b:4000,gemini-1.5-flash" -> paliers dans l'ordre
+    private List<ModelRoute> parse(String config) {
+        List<ModelRoute> tiers = Arrays.stream(config.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> {
+                    int separator = entry.indexOf(':');
+                    if (separator < 0) {
+                        return new ModelRoute(entry, null);
+                    }
+                    return new ModelRoute(entry.substring(0, separator).trim(),
+                            Duration.ofMillis(Long.parseLong(entry.substring(separator + 1).trim())));
+                })
+                .toList();
+        if (tiers.isEmpty()) {
+            throw new IllegalStateException("No Gemini model configured for route: " + config);
+        }
+        return tiers;
+    }
+}
@@ -0,0 +1,349 @@
+package sn.codiallo.ecoBuddy.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Couche de résilience autour des appels Gemini :
+ * - disjoncteur sur une fenêtre glissante d'appels (taux d'erreurs et d'appels lents) ;
+ * - cloisons de concurrence par type d'appel (la narration n'est pas affamée par les scans) ;
+ * - timeouts dérivés du percentile observé des latences de chaque type.
+ * Un appel refusé (disjoncteur ouvert, cloison pleine) échoue immédiatement avec
+ * CallNotPermittedException : l'appelant sert alors son fallback sans attendre.
+ */
+@Service
+@Slf4j
+public class GeminiResilience {
+
+    public static class CallNotPermittedException extends RuntimeException {
+        public CallNotPermittedException(String message) {
+            super(message);
+        }
+    }
+
+    public enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Clé de contexte Reactor : l'appelant mesure lui-même la latence (par palier de
+     * routage, ou requête couverte entière) et execute() n'enregistre pas celle de l'appel.
+     */
+    public static final String CALLER_RECORDS_LATENCY = "gemini.callerRecordsLatency";
+
+    @Value("${gemini.resilience.breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${gemini.resilience.breaker.min-calls:10}")
+    private int breakerMinCalls;
+
+    @Value("${gemini.resilience.breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${gemini.resilience.breaker.slow-call-rate-threshold:0.8}")
+    private double slowCallRateThreshold;
+
+    @Value("${gemini.resilience.breaker.slow-call-ms:8000}")
+    private long slowCallMs;
+
+    @Value("${gemini.resilience.breaker.open-duration-ms:15000}")
+    private long openDurationMs;
+
+    @Value("${gemini.resilience.breaker.half-open-trial-calls:3}")
+    private int halfOpenTrialCalls;
+
+    @Value("${gemini.resilience.bulkhead.narrative:16}")
+    private int narrativeConcurrency;
+
+    @Value("${gemini.resilience.bulkhead.speculative:6}")
+    private int speculativeConcurrency;
+
+    @Value("${gemini.resilience.bulkhead.story-start:2}")
+    private int storyStartConcurrency;
+
+    @Value("${gemini.resilience.bulkhead.scan-analysis:6}")
+    private int scanAnalysisConcurrency;
+
+    @Value("${gemini.resilience.timeout.percentile:0.99}")
+    private double timeoutPercentile;
+
+    @Value("${gemini.resilience.timeout.multiplier:1.5}")
+    private double timeoutMultiplier;
+
+    @Value("${gemini.resilience.timeout.min-ms:2000}")
+    private long minTimeoutMs;
+
+    @Value("${gemini.resilience.timeout.max-ms:12000}")
+    private long maxTimeoutMs;
+
+    @Value("${gemini.resilience.timeout.window-size:200}")
+    private int latencyWindowSize;
+
+    @Value("${gemini.resilience.timeout.min-samples:20}")
+    private int minLatencySamples;
+
+    private final Map<GeminiCallType, Semaphore> bulkheads = new EnumMap<>(GeminiCallType.class);
+    private final Map<GeminiCallType, Integer> bulkheadLimits = new EnumMap<>(GeminiCallType.class);
+    private final Map<GeminiCallType, LatencyWindow> latencies = new EnumMap<>(GeminiCallType.class);
+
+    // État du disjoncteur (accès synchronisés sur this)
+    private BreakerState state = BreakerState.CLOSED;
+    private boolean[] failedOutcomes;
+    private boolean[] slowOutcomes;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private long openedAt;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    @PostConstruct
+    void init() {
+        bulkheadLimits.put(GeminiCallType.NARRATIVE, narrativeConcurrency);
+        bulkheadLimits.put(GeminiCallType.SPECULATIVE, speculativeConcurrency);
+        bulkheadLimits.put(GeminiCallType.STORY_START, storyStartConcurrency);
+        bulkheadLimits.put(GeminiCallType.SCAN_ANALYSIS, scanAnalysisConcurrency);
+        bulkheadLimits.forEach((type, limit) -> bulkheads.put(type, new Semaphore(limit)));
+        for (GeminiCallType type : GeminiCallType.values()) {
+            latencies.put(type, new LatencyWindow(latencyWindowSize));
+        }
+        failedOutcomes = new boolean[breakerWindowSize];
+        slowOutcomes = new boolean[breakerWindowSize];
+    }
+
+    /**
+     * Exécute un appel unitaire ; la fonction reçoit le timeout adaptatif à appliquer.
+     */
+    public <T> Mono<T> execute(GeminiCallType type, Function<Duration, Mono<T>> call) {
+        return Mono.deferContextual(context -> {
+            boolean recordLatency = !context.hasKey(CALLER_RECORDS_LATENCY);
+            Permit permit = acquire(type);
+            long start = System.nanoTime();
+            return call.apply(currentTimeout(type))
+                    .doOnSuccess(value -> {
+                        long latencyMs = (System.nanoTime() - start) / 1_000_000;
+                        if (recordLatency) {
+                            latencies.get(type).record(latencyMs);
+                        }
+                        permit.complete(false, latencyMs > slowCallMs);
+                    })
+                    .doOnError(ex -> permit.complete(true, false))
+                    // Place rendue avant le signal : l'ordonnanceur peut la réattribuer dès la fin de l'appel
+                    .doOnTerminate(permit::release)
+                    .doOnCancel(permit::release);
+        });
+    }
+
+    /**
+     * Variante streaming : la fonction reçoit le timeout adaptatif à appliquer au
+     * premier fragment.
+     */
+    public <T> Flux<T> executeStream(GeminiCallType type, Function<Duration, Flux<T>> call) {
+        return Flux.defer(() -> {
+            Permit permit = acquire(type);
+            return call.apply(currentTimeout(type))
+                    .doOnComplete(() -> permit.complete(false, false))
+                    .doOnError(ex -> permit.complete(true, false))
+                    .doOnTerminate(permit::release)
+                    .doOnCancel(permit::release);
+        });
+    }
+
+    /**
+     * Latence mesurée par l'appelant (palier qui a répondu, ou requête couverte entière) (voir CALLER_RECORDS_LATENCY).
+     */
+    public void recordLatency(GeminiCallType type, long latencyMs) {
+        latencies.get(type).record(latencyMs);
+    }
+
+    /**
+     * Taille de la cloison d'un type : GeminiScheduler n'attribue jamais plus de places
+     * à ce type, pour qu'un appel servi ne soit pas ensuite refusé par la cloison.
+     */
+    public int bulkheadLimit(GeminiCallType type) {
+        return bulkheadLimits.get(type);
+    }
+
+    public Duration currentTimeout(GeminiCallType type) {
+        LatencyWindow window = latencies.get(type);
+        if (window.size() < minLatencySamples) {
+            return Duration.ofMillis(maxTimeoutMs);
+        }
+        long derived = (long) (window.percentile(timeoutPercentile) * timeoutMultiplier);
+        return Duration.ofMillis(Math.max(minTimeoutMs, Math.min(maxTimeoutMs, derived)));
+    }
+
+    /**
+     * Percentile observé (ms) des appels réussis d'un type, ou -1 sans échantillons suffisants.
+     */
+    public long observedPercentile(GeminiCallType type, double percentile) {
+        LatencyWindow window = latencies.get(type);
+        return window.size() < minLatencySamples ? -1 : window.percentile(percentile);
+    }
+
+    public synchronized BreakerState getState() {
+        return state;
+    }
+
+    private Permit acquire(GeminiCallType type) {
+        boolean trial = acquireBreakerPermission();
+        Semaphore bulkhead = bulkheads.get(type);
+        if (!bulkhead.tryAcquire()) {
+            if (trial) {
+                releaseTrial();
+            }
+            throw new CallNotPermittedException("Gemini bulkhead full for " + type);
+        }
+        return new Permit(bulkhead, trial);
+    }
+
+    // Retourne true si l'appel est un appel d'essai (disjoncteur semi-ouvert)
+    private synchronized boolean acquireBreakerPermission() {
+        if (state == BreakerState.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                throw new CallNotPermittedException("Gemini circuit breaker is open");
+            }
+            state = BreakerState.HALF_OPEN;
+            trialsInFlight = 0;
+            trialSuccesses = 0;
+            log.info("Gemini circuit breaker half-open, allowing {} trial calls", halfOpenTrialCalls);
+        }
+        if (state == BreakerState.HALF_OPEN) {
+            if (trialsInFlight >= halfOpenTrialCalls) {
+                throw new CallNotPermittedException("Gemini circuit breaker is half-open");
+            }
+            trialsInFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void releaseTrial() {
+        if (state == BreakerState.HALF_OPEN && trialsInFlight > 0) {
+            trialsInFlight--;
+        }
+    }
+
+    private synchronized void recordOutcome(boolean trial, boolean failed, boolean slow) {
+        if (trial) {
+            if (state != BreakerState.HALF_OPEN) {
+                return;
+            }
+            trialsInFlight--;
+            if (failed || slow) {
+                open();
+            } else if (++trialSuccesses >= halfOpenTrialCalls) {
+                close();
+            }
+            return;
+        }
+        if (state != BreakerState.CLOSED) {
+            return;
+        }
+
+        failedOutcomes[outcomeIndex] = failed;
+        slowOutcomes[outcomeIndex] = slow;
+        outcomeIndex = (outcomeIndex + 1) % failedOutcomes.length;
+        outcomeCount = Math.min(outcomeCount + 1, failedOutcomes.length);
+        if (outcomeCount < breakerMinCalls) {
+            return;
+        }
+
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < outcomeCount; i++) {
+            if (failedOutcomes[i]) failures++;
+            if (slowOutcomes[i]) slowCalls++;
+        }
+        if (failures >= failureRateThreshold * outcomeCount || slowCalls >= slowCallRateThreshold * outcomeCount) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = BreakerState.OPEN;
+        openedAt = System.currentTimeMillis();
+        log.warn("Gemini circuit breaker opened for {}ms", openDurationMs);
+    }
+
+    private void close() {
+        state = BreakerState.CLOSED;
+        Arrays.fill(failedOutcomes, false);
+        Arrays.fill(slowOutcomes, false);
+        outcomeIndex = 0;
+        outcomeCount = 0;
+        log.info("Gemini circuit breaker closed");
+    }
+
+    private final class Permit {
+        private final Semaphore bulkhead;
+        private final boolean trial;
+        private boolean completed;
+        private boolean released;
+
+        Permit(Semaphore bulkhead, boolean trial) {
+            this.bulkhead = bulkhead;
+            this.trial = trial;
+        }
+
+        synchronized void complete(boolean failed, boolean slow) {
+            if (!completed) {
+                completed = true;
+                recordOutcome(trial, failed, slow);
+            }
+        }
+
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            bulkhead.release();
+            // Appel annulé avant son issue : libérer la place d'essai
+            if (trial && !completed) {
+                releaseTrial();
+            }
+        }
+    }
+
+    /**
+     * Dernières latences observées (ms), en anneau.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int index;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        synchronized void record(long latencyMs) {
+            samples[index] = latencyMs;
+            index = (index + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, rank))];
+        }
+    }
+}
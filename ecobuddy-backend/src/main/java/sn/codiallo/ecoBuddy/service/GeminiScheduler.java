@@ -0,0 +1,236 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordonnanceur des requêtes sortantes vers Gemini, devant GeminiResilience.
+ * Au plus max-concurrency appels en cours, tous types confondus, et jamais plus que
+ * la cloison du type dans GeminiResilience (bulkhead.*) : un appel servi n'est pas
+ * refusé ensuite par la cloison. Au-delà, chaque type attend dans sa propre file
+ * bornée et les files sont servies par priorité (voir GeminiCallType). foreground-reserve places sont réservées à la narration :
+ * le travail de fond ne peut jamais occuper toute la capacité. Une requête qui a
+ * dépassé son échéance (max-wait de son type) est abandonnée au lieu d'être servie ;
+ * file pleine ou échéance dépassée échouent avec CallNotPermittedException.
+ */
+@Service
+@Slf4j
+public class GeminiScheduler {
+
+    private final MeterRegistry meterRegistry;
+    private final GeminiResilience geminiResilience;
+
+    @Value("${gemini.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gemini.scheduler.max-concurrency:24}")
+    private int maxConcurrency;
+
+    @Value("${gemini.scheduler.foreground-reserve:6}")
+    private int foregroundReserve;
+
+    @Value("${gemini.scheduler.queue-capacity.narrative:100}")
+    private int narrativeQueueCapacity;
+
+    @Value("${gemini.scheduler.queue-capacity.scan-analysis:50}")
+    private int scanAnalysisQueueCapacity;
+
+    @Value("${gemini.scheduler.queue-capacity.speculative:20}")
+    private int speculativeQueueCapacity;
+
+    @Value("${gemini.scheduler.queue-capacity.story-start:5}")
+    private int storyStartQueueCapacity;
+
+    @Value("${gemini.scheduler.max-wait-ms.narrative:3000}")
+    private long narrativeMaxWaitMs;
+
+    @Value("${gemini.scheduler.max-wait-ms.scan-analysis:10000}")
+    private long scanAnalysisMaxWaitMs;
+
+    @Value("${gemini.scheduler.max-wait-ms.speculative:2000}")
+    private long speculativeMaxWaitMs;
+
+    @Value("${gemini.scheduler.max-wait-ms.story-start:30000}")
+    private long storyStartMaxWaitMs;
+
+    private final Map<GeminiCallType, ArrayDeque<Ticket>> queues = new EnumMap<>(GeminiCallType.class);
+    private final Map<GeminiCallType, Integer> queueCapacities = new EnumMap<>(GeminiCallType.class);
+    private final Map<GeminiCallType, Long> maxWaitMs = new EnumMap<>(GeminiCallType.class);
+    private final List<GeminiCallType> byPriority = new ArrayList<>(List.of(GeminiCallType.values()));
+
+    // État partagé (accès synchronisés sur this)
+    private int running;
+    private final Map<GeminiCallType, Integer> runningByType = new EnumMap<>(GeminiCallType.class);
+
+    public GeminiScheduler(MeterRegistry meterRegistry, GeminiResilience geminiResilience) {
+        this.meterRegistry = meterRegistry;
+        this.geminiResilience = geminiResilience;
+    }
+
+    @PostConstruct
+    void init() {
+        queueCapacities.put(GeminiCallType.NARRATIVE, narrativeQueueCapacity);
+        queueCapacities.put(GeminiCallType.SCAN_ANALYSIS, scanAnalysisQueueCapacity);
+        queueCapacities.put(GeminiCallType.SPECULATIVE, speculativeQueueCapacity);
+        queueCapacities.put(GeminiCallType.STORY_START, storyStartQueueCapacity);
+        maxWaitMs.put(GeminiCallType.NARRATIVE, narrativeMaxWaitMs);
+        maxWaitMs.put(GeminiCallType.SCAN_ANALYSIS, scanAnalysisMaxWaitMs);
+        maxWaitMs.put(GeminiCallType.SPECULATIVE, speculativeMaxWaitMs);
+        maxWaitMs.put(GeminiCallType.STORY_START, storyStartMaxWaitMs);
+        byPriority.sort(Comparator.comparingInt(GeminiCallType::getPriority));
+
+        for (GeminiCallType type : GeminiCallType.values()) {
+            ArrayDeque<Ticket> queue = new ArrayDeque<>();
+            queues.put(type, queue);
+            runningByType.put(type, 0);
+            Gauge.builder("gemini.scheduler.queued", this, scheduler -> scheduler.queued(type))
+                    .tag("type", type.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("gemini.scheduler.running", this, GeminiScheduler::running).register(meterRegistry);
+    }
+
+    /**
+     * Exécute l'appel dès qu'une place est attribuée à son type ; la place est rendue
+     * à la fin de l'appel (succès, erreur ou annulation).
+     */
+    public <T> Mono<T> schedule(GeminiCallType type, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.usingWhen(acquire(type), slot -> call,
+                slot -> released(type), (slot, ex) -> released(type), slot -> released(type));
+    }
+
+    public <T> Flux<T> scheduleStream(GeminiCallType type, Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Flux.usingWhen(acquire(type), slot -> call,
+                slot -> released(type), (slot, ex) -> released(type), slot -> released(type));
+    }
+
+    private final class Ticket {
+        private final GeminiCallType type;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private final long deadline;
+        private final MonoSink<Boolean> sink;
+        private boolean granted;
+
+        private Ticket(GeminiCallType type, MonoSink<Boolean> sink) {
+            this.type = type;
+            this.deadline = enqueuedAt + maxWaitMs.get(type);
+            this.sink = sink;
+        }
+    }
+
+    private Mono<Boolean> acquire(GeminiCallType type) {
+        return Mono.<Boolean>create(sink -> {
+                    Ticket ticket = new Ticket(type, sink);
+                    sink.onCancel(() -> cancel(ticket));
+                    String rejection = enqueue(ticket);
+                    if (rejection != null) {
+                        meterRegistry.counter("gemini.scheduler.rejected", "type", type.name(), "reason", "queue-full").increment();
+                        sink.error(new GeminiResilience.CallNotPermittedException(rejection));
+                    } else {
+                        dispatch();
+                    }
+                })
+                .timeout(Duration.ofMillis(maxWaitMs.get(type)), Mono.defer(() -> {
+                    meterRegistry.counter("gemini.scheduler.rejected", "type", type.name(), "reason", "deadline").increment();
+                    return Mono.error(new GeminiResilience.CallNotPermittedException(
+                            "Gemini queue deadline passed for " + type));
+                }));
+    }
+
+    private synchronized String enqueue(Ticket ticket) {
+        ArrayDeque<Ticket> queue = queues.get(ticket.type);
+        if (queue.size() >= queueCapacities.get(ticket.type)) {
+            return "Gemini queue full for " + ticket.type;
+        }
+        queue.addLast(ticket);
+        return null;
+    }
+
+    // Annulé en file : retiré ; annulé après attribution mais avant livraison : place rendue
+    private void cancel(Ticket ticket) {
+        synchronized (this) {
+            if (queues.get(ticket.type).remove(ticket) || !ticket.granted) {
+                return;
+            }
+            ticket.granted = false;
+        }
+        release(ticket.type);
+    }
+
+    private Mono<Void> released(GeminiCallType type) {
+        return Mono.fromRunnable(() -> release(type));
+    }
+
+    private void release(GeminiCallType type) {
+        synchronized (this) {
+            running--;
+            runningByType.merge(type, -1, Integer::sum);
+        }
+        dispatch();
+    }
+
+    // Attribue les places libres par priorité ; les signaux partent hors du verrou
+    private void dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        List<Ticket> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (GeminiCallType type : byPriority) {
+                int limit = type.isForeground() ? maxConcurrency : maxConcurrency - foregroundReserve;
+                int typeLimit = geminiResilience.bulkheadLimit(type);
+                ArrayDeque<Ticket> queue = queues.get(type);
+                while (running < limit && runningByType.get(type) < typeLimit && !queue.isEmpty()) {
+                    Ticket ticket = queue.pollFirst();
+                    if (ticket.deadline < now) {
+                        expired.add(ticket);
+                        continue;
+                    }
+                    running++;
+                    runningByType.merge(type, 1, Integer::sum);
+                    ticket.granted = true;
+                    granted.add(ticket);
+                }
+            }
+        }
+
+        for (Ticket ticket : expired) {
+            meterRegistry.counter("gemini.scheduler.rejected", "type", ticket.type.name(), "reason", "deadline").increment();
+            ticket.sink.error(new GeminiResilience.CallNotPermittedException(
+                    "Gemini queue deadline passed for " + ticket.type));
+        }
+        for (Ticket ticket : granted) {
+            meterRegistry.timer("gemini.scheduler.wait", "type", ticket.type.name())
+                    .record(Duration.ofMillis(System.currentTimeMillis() - ticket.enqueuedAt));
+            ticket.sink.success(Boolean.TRUE);
+        }
+    }
+
+    private synchronized int queued(GeminiCallType type) {
+        return queues.get(type).size();
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+}
@@ -1,27 +1,40 @@
 package sn.codiallo.ecoBuddy.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import sn.codiallo.ecoBuddy.dto.GeminiRequest;
 import sn.codiallo.ecoBuddy.dto.GeminiResponse;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class GeminiService {
 
+    // Clé de contexte posée par hedge : la latence est alors enregistrée pour la requête couverte entière
+    private static final String HEDGED = "gemini.hedged";
+
     private final WebClient webClient;
+    private final GeminiResilience geminiResilience;
+    private final GeminiScheduler geminiScheduler;
+    private final GeminiModelRouter geminiModelRouter;
+    private final MeterRegistry meterRegistry;
 
     @Value("${gemini.api.key}")
     private String apiKey;
@@ -29,69 +42,327 @@ public class GeminiService {
     @Value("${gemini.api.base-url}")
     private String baseUrl;
 
-    // 🚀 CACHE SIMPLE pour histoires de démarrage
-    private final Map<String, CachedStory> storyStartCache = new ConcurrentHashMap<>();
-    private static final long CACHE_DURATION_MINUTES = 30;
+    @Value("${gemini.hedging.enabled:true}")
+    private boolean hedgingEnabled;
 
-    private static class CachedStory {
-        final String content;
-        final LocalDateTime timestamp;
+    @Value("${gemini.hedging.types:NARRATIVE}")
+    private Set<String> hedgedTypes;
 
-        CachedStory(String content) {
-            this.content = content;
-            this.timestamp = LocalDateTime.now();
-        }
+    @Value("${gemini.hedging.percentile:0.9}")
+    private double hedgePercentile;
+
+    @Value("${gemini.hedging.min-delay-ms:500}")
+    private long hedgeMinDelayMs;
+
+    @Value("${gemini.hedging.budget-ratio:0.1}")
+    private double hedgeBudgetRatio;
+
+    @Value("${gemini.hedging.budget-max-tokens:10}")
+    private double hedgeBudgetMaxTokens;
+
+    private HedgeBudget hedgeBudget;
+
+    @PostConstruct
+    void initHedgeBudget() {
+        hedgeBudget = new HedgeBudget(hedgeBudgetRatio, hedgeBudgetMaxTokens);
+    }
+
+    // Appels Gemini en cours (indicateur de charge pour la génération spéculative)
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
 
-        boolean isExpired() {
-            return LocalDateTime.now().minusMinutes(CACHE_DURATION_MINUTES).isAfter(timestamp);
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * Variante non bloquante : aucun thread n'est occupé pendant l'appel Gemini.
+     * Le Mono émet toujours un texte (réponse Gemini ou fallback), jamais d'erreur.
+     */
+    public Mono<String> generateNarrativeAsync(String context, List<String> choices) {
+        return callGemini(buildPrompt(context, choices), GeminiCallType.NARRATIVE)
+                .doOnSubscribe(subscription -> log.info("🤖 Starting Gemini generation..."))
+                .doOnNext(text -> log.info("✅ Gemini responded in time"))
+                .onErrorResume(ex -> logFailure("Gemini", ex))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("🔄 No response from Gemini, using fallback");
+                    return generateFallbackNarrative(context);
+                }));
+    }
+
+    /**
+     * Même génération que generateNarrativeAsync, dans la cloison spéculative.
+     * Vide en cas d'échec : la requête réelle refera alors l'appel.
+     */
+    public Mono<String> speculateNarrativeAsync(String context, List<String> choices) {
+        return callGemini(buildPrompt(context, choices), GeminiCallType.SPECULATIVE)
+                .onErrorResume(ex -> logFailure("Speculative chapter", ex));
+    }
+
+    /**
+     * Génère une ouverture d'histoire sur un thème donné. Le Mono est vide en cas
+     * d'échec : c'est au pool d'ouvertures de décider du repli.
+     */
+    public Mono<String> generateStoryStartAsync(String theme) {
+        return callGemini(buildStoryStartPrompt(theme), GeminiCallType.STORY_START)
+                .doOnSubscribe(subscription -> log.info("🌱 Starting new story generation ({})...", theme))
+                .doOnNext(result -> log.info("✅ Story start generated successfully"))
+                .onErrorResume(ex -> logFailure("Story start", ex));
+    }
+
+    /**
+     * Analyse écologique d'un objet scanné (prompt envoyé tel quel). Vide en cas d'échec.
+     */
+    public Mono<String> generateScanAnalysisAsync(String prompt) {
+        return callGemini(prompt, GeminiCallType.SCAN_ANALYSIS)
+                .onErrorResume(ex -> logFailure("Scan analysis", ex));
+    }
+
+    private <T> Mono<T> logFailure(String what, Throwable ex) {
+        if (ex instanceof GeminiResilience.CallNotPermittedException) {
+            log.warn("⚡ {} not attempted ({}), using fallback", what, ex.getMessage());
+        } else if (ex instanceof TimeoutException) {
+            log.warn("⏰ {} timeout, using fallback", what);
+        } else {
+            log.error("❌ Error calling Gemini API ({}): ", what, ex);
         }
+        return Mono.empty();
     }
 
-    public String generateNarrative(String context, List<String> choices) {
-        try {
-            String prompt = buildPrompt(context, choices);
-            GeminiRequest request = buildGeminiRequest(prompt);
+    /**
+     * Génération en streaming (streamGenerateContent, SSE) : émet les fragments de
+     * texte au fil de l'eau. Sans aucun fragment reçu (erreur, timeout), émet le
+     * fallback en un seul fragment ; une coupure en cours de route termine le flux.
+     */
+    public Flux<String> streamNarrative(String context, List<String> choices) {
+        return withStreamFallback(streamGemini(buildPrompt(context, choices)),
+                () -> generateFallbackNarrative(context));
+    }
 
-            GeminiResponse response = webClient.post()
-                    .uri(baseUrl + "/v1beta/models/gemini-1.5-flash:generateContent?key=" + apiKey)
+    private Flux<String> streamGemini(String prompt) {
+        recordPromptTokens(prompt, GeminiCallType.NARRATIVE);
+        GeminiRequest request = buildGeminiRequest(prompt);
+        // Une seule place et un seul résultat pour le disjoncteur, quel que soit le palier qui répond
+        return geminiScheduler.scheduleStream(GeminiCallType.NARRATIVE,
+                        geminiResilience.executeStream(GeminiCallType.NARRATIVE, timeout ->
+                                streamTier(request, geminiModelRouter.routes(GeminiCallType.NARRATIVE), 0,
+                                        timeout, deadline())))
+                .doOnSubscribe(subscription -> inFlightRequests.incrementAndGet())
+                .doFinally(signal -> inFlightRequests.decrementAndGet());
+    }
+
+    // Palier suivant seulement si aucun fragment n'a été reçu du palier courant
+    private Flux<String> streamTier(GeminiRequest request, List<GeminiModelRouter.ModelRoute> routes,
+                                    int tier, Duration timeout, long deadlineNanos) {
+        GeminiModelRouter.ModelRoute route = routes.get(tier);
+        return Flux.defer(() -> {
+            Duration firstFragmentTimeout = tierTimeout(route, timeout, deadlineNanos);
+            if (firstFragmentTimeout.isZero()) {
+                return Flux.error(new TimeoutException("Gemini cascade budget exhausted before " + route.model()));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean received = new AtomicBoolean(false);
+            // Premier fragment : timeout du palier borné par l'échéance de la cascade ; ensuite 10 s max entre deux fragments
+            return webClient.post()
+                    .uri(baseUrl + route.streamGenerateContentPath() + "?alt=sse&key=" + apiKey)
                     .header("Content-Type", "application/json")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
                     .bodyValue(request)
                     .retrieve()
-                    .bodyToMono(GeminiResponse.class)
-                    .timeout(Duration.ofSeconds(12)) // 🚀 TIMEOUT OPTIMISÉ
-                    .doOnSubscribe(subscription -> log.info("🤖 Starting Gemini generation..."))
-                    .doOnNext(resp -> log.info("✅ Gemini responded in time"))
-                    .onErrorResume(TimeoutException.class, ex -> {
-                        log.warn("⏰ Gemini timeout, using fallback");
-                        return Mono.empty();
+                    .bodyToFlux(GeminiResponse.class)
+                    .map(this::extractTextOrEmpty)
+                    .filter(text -> !text.isEmpty())
+                    .timeout(Mono.delay(firstFragmentTimeout), item -> Mono.delay(Duration.ofSeconds(10)))
+                    .doOnNext(text -> received.set(true))
+                    .doOnComplete(() -> geminiModelRouter.recordSuccess(GeminiCallType.NARRATIVE, route, System.nanoTime() - start))
+                    .onErrorResume(ex -> {
+                        geminiModelRouter.recordFailure(GeminiCallType.NARRATIVE, route, System.nanoTime() - start, ex);
+                        if (received.get() || tier + 1 >= routes.size()) {
+                            return Flux.error(ex);
+                        }
+                        log.warn("⏭️ Gemini model {} failed ({}), trying {}", route.model(),
+                                ex.getClass().getSimpleName(), routes.get(tier + 1).model());
+                        geminiModelRouter.recordFallthrough(GeminiCallType.NARRATIVE, route);
+                        return streamTier(request, routes, tier + 1, timeout, deadlineNanos);
+                    });
+        });
+    }
+
+    private Flux<String> withStreamFallback(Flux<String> stream, Supplier<String> fallback) {
+        return Flux.defer(() -> {
+            AtomicBoolean received = new AtomicBoolean(false);
+            return stream
+                    .doOnNext(text -> received.set(true))
+                    .onErrorResume(ex -> {
+                        log.warn("⏰ Gemini stream failed ({}), {}", ex.getClass().getSimpleName(),
+                                received.get() ? "ending stream" : "using fallback");
+                        return received.get() ? Flux.empty() : Flux.just(fallback.get());
                     })
-                    .block(Duration.ofSeconds(15)); // 🛡️ BACKUP TIMEOUT
+                    .switchIfEmpty(Flux.defer(() -> Flux.just(fallback.get())));
+        });
+    }
 
-            if (response != null) {
-                return extractTextFromResponse(response);
-            } else {
-                log.warn("🔄 No response from Gemini, using fallback");
-                return generateFallbackNarrative(context);
+    private Mono<String> callGemini(String prompt, GeminiCallType type) {
+        recordPromptTokens(prompt, type);
+        GeminiRequest request = buildGeminiRequest(prompt);
+        // Place attribuée par l'ordonnanceur (priorité du type) avant la cloison de GeminiResilience ;
+        // la cascade entière compte pour un seul appel au disjoncteur, sous une seule échéance
+        Mono<String> attempt = geminiScheduler.schedule(type, geminiResilience.execute(type,
+                timeout -> callTier(request, type, geminiModelRouter.routes(type), 0, timeout, deadline())));
+
+        // La latence des timeouts adaptatifs est celle du palier qui a répondu, pas de la cascade
+        return hedge(type, attempt)
+                .contextWrite(context -> context.put(GeminiResilience.CALLER_RECORDS_LATENCY, true))
+                .doOnSubscribe(subscription -> inFlightRequests.incrementAndGet())
+                .doFinally(signal -> inFlightRequests.decrementAndGet());
+    }
+
+    /**
+     * Un palier de routage ; sur timeout ou erreur, le palier suivant est essayé.
+     * Chaque palier n'a que le temps restant avant l'échéance de la cascade (deadlineNanos).
+     * Les échecs d'un palier alimentent le taux d'erreur du routeur (par modèle),
+     * seul l'échec du dernier palier atteint le disjoncteur.
+     */
+    private Mono<String> callTier(GeminiRequest request, GeminiCallType type,
+                                  List<GeminiModelRouter.ModelRoute> routes, int tier,
+                                  Duration timeout, long deadlineNanos) {
+        GeminiModelRouter.ModelRoute route = routes.get(tier);
+        Mono<String> attempt = Mono.deferContextual(context -> {
+            Duration tierTimeout = tierTimeout(route, timeout, deadlineNanos);
+            if (tierTimeout.isZero()) {
+                return Mono.error(new TimeoutException("Gemini cascade budget exhausted before " + route.model()));
             }
+            // Sous couverture, hedge enregistre lui-même la latence de la requête
+            boolean recordLatency = !context.hasKey(HEDGED);
+            long start = System.nanoTime();
+            return webClient.post()
+                    .uri(baseUrl + route.generateContentPath() + "?key=" + apiKey)
+                    .header("Content-Type", "application/json")
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToMono(GeminiResponse.class)
+                    .timeout(tierTimeout)
+                    .map(this::extractTextFromResponse)
+                    .doOnSuccess(text -> {
+                        long latencyNanos = System.nanoTime() - start;
+                        geminiModelRouter.recordSuccess(type, route, latencyNanos);
+                        if (recordLatency) {
+                            geminiResilience.recordLatency(type, latencyNanos / 1_000_000);
+                        }
+                    })
+                    .doOnError(ex -> geminiModelRouter.recordFailure(type, route, System.nanoTime() - start, ex));
+        });
+
+        if (tier + 1 >= routes.size()) {
+            return attempt;
+        }
+        return attempt.onErrorResume(ex -> {
+            log.warn("⏭️ Gemini model {} failed ({}), trying {}", route.model(),
+                    ex.getClass().getSimpleName(), routes.get(tier + 1).model());
+            geminiModelRouter.recordFallthrough(type, route);
+            return callTier(request, type, routes, tier + 1, timeout, deadlineNanos);
+        });
+    }
 
-        } catch (Exception e) {
-            log.error("❌ Error calling Gemini API: ", e);
-            return generateFallbackNarrative(context);
+    private long deadline() {
+        return System.nanoTime() + geminiModelRouter.cascadeBudget().toNanos();
+    }
+
+    // Timeout du palier (adaptatif, plafonné par le palier) borné par le temps restant ; zéro si l'échéance est passée
+    private static Duration tierTimeout(GeminiModelRouter.ModelRoute route, Duration timeout, long deadlineNanos) {
+        Duration remaining = Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+        Duration capped = route.capTimeout(timeout);
+        return capped.compareTo(remaining) < 0 ? capped : remaining;
+    }
+
+    /**
+     * Requête couverte : si la première tentative n'a pas répondu au bout du p90 observé,
+     * une seconde requête identique part et la première réponse l'emporte (l'autre est
+     * annulée). Le nombre de requêtes couvertes est plafonné par un budget proportionnel
+     * au trafic (hedge-budget-ratio). La latence enregistrée pour les timeouts est celle
+     * de la requête entière, depuis le départ de la première tentative : une tentative
+     * annulée ou gagnante en retard ne biaise pas la fenêtre vers le bas.
+     * Une erreur de la première tentative avant la couverture est renvoyée aussitôt.
+     */
+    private Mono<String> hedge(GeminiCallType type, Mono<String> attempt) {
+        if (!hedgingEnabled || !hedgedTypes.contains(type.name())) {
+            return attempt;
+        }
+        long hedgeAfterMs = geminiResilience.observedPercentile(type, hedgePercentile);
+        if (hedgeAfterMs < 0) {
+            return attempt;
         }
+
+        return Mono.defer(() -> {
+            String tag = type.name();
+            meterRegistry.counter("gemini.hedge.eligible", "type", tag).increment();
+            hedgeBudget.deposit();
+
+            long start = System.nanoTime();
+            AtomicBoolean hedged = new AtomicBoolean(false);
+            AtomicBoolean secondaryWon = new AtomicBoolean(false);
+            AtomicInteger failures = new AtomicInteger();
+
+            // Tant qu'une autre tentative est en cours, un échec laisse décider celle-ci
+            Function<Throwable, Mono<String>> onFailure = ex ->
+                    hedged.get() && failures.incrementAndGet() < 2 ? Mono.never() : Mono.error(ex);
+
+            Mono<String> primary = attempt.onErrorResume(onFailure);
+            Mono<String> secondary = Mono.delay(Duration.ofMillis(Math.max(hedgeMinDelayMs, hedgeAfterMs)))
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryWithdraw()) {
+                            return Mono.<String>never(); // pas de couverture : la première tentative décide
+                        }
+                        hedged.set(true);
+                        meterRegistry.counter("gemini.hedge.fired", "type", tag).increment();
+                        return attempt.doOnNext(text -> secondaryWon.set(true)).onErrorResume(onFailure);
+                    });
+
+            return Mono.firstWithSignal(primary, secondary)
+                    .doOnNext(text -> {
+                        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                        geminiResilience.recordLatency(type, elapsedMs);
+                        if (secondaryWon.get()) {
+                            meterRegistry.counter("gemini.hedge.won", "type", tag).increment();
+                        }
+                        meterRegistry.timer("gemini.hedge.latency", "type", tag,
+                                        "winner", secondaryWon.get() ? "secondary" : "primary")
+                                .record(Duration.ofMillis(elapsedMs));
+                    })
+                    .contextWrite(context -> context.put(HEDGED, true));
+        });
     }
 
-    public String generateStoryStart() {
-        // 🚀 VÉRIFIER LE CACHE D'ABORD
-        String cacheKey = "story_start";
-        CachedStory cached = storyStartCache.get(cacheKey);
+    // Budget de couverture : chaque appel éligible crédite une fraction de jeton, chaque couverture en consomme un
+    private static final class HedgeBudget {
+        private final double ratio;
+        private final double maxTokens;
+        private double tokens;
 
-        if (cached != null && !cached.isExpired()) {
-            log.info("⚡ Using cached story start ({}s old)",
-                Duration.between(cached.timestamp, LocalDateTime.now()).getSeconds());
-            return cached.content;
+        HedgeBudget(double ratio, double maxTokens) {
+            this.ratio = ratio;
+            this.maxTokens = maxTokens;
         }
 
-        String prompt = "Generate an eco-story. RESPOND ONLY IN JSON:\n" +
+        synchronized void deposit() {
+            tokens = Math.min(maxTokens, tokens + ratio);
+        }
+
+        synchronized boolean tryWithdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    private void recordPromptTokens(String prompt, GeminiCallType type) {
+        meterRegistry.summary("gemini.prompt.tokens", "type", type.name())
+                .record(NarrativePromptBuilder.estimateTokens(prompt));
+    }
+
+    private String buildStoryStartPrompt(String theme) {
+        return "Generate an eco-story about " + theme + ". RESPOND ONLY IN JSON:\n" +
                 "{\n" +
                 "  \"title\": \"Catchy title (max 40 chars)\",\n" +
                 "  \"content\": \"40-60 word eco-situation\",\n" +
@@ -99,53 +370,13 @@ public class GeminiService {
                 "  \"points\": [25, 15, 10],\n" +
                 "  \"isCompleted\": false\n" +
                 "}\n" +
-                "Make it engaging. Points: 25-35=excellent, 15-24=good, 5-14=average eco impact.";
-
-        try {
-            GeminiRequest request = buildGeminiRequest(prompt);
-
-            GeminiResponse response = webClient.post()
-                    .uri(baseUrl + "/v1beta/models/gemini-1.5-flash:generateContent?key=" + apiKey)
-                    .header("Content-Type", "application/json")
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(GeminiResponse.class)
-                    .timeout(Duration.ofSeconds(10)) // 🚀 TIMEOUT PLUS COURT pour story start
-                    .doOnSubscribe(subscription -> log.info("🌱 Starting new story generation..."))
-                    .doOnNext(resp -> log.info("✅ Story start generated successfully"))
-                    .onErrorResume(TimeoutException.class, ex -> {
-                        log.warn("⏰ Story start timeout, using fallback");
-                        return Mono.empty();
-                    })
-                    .block(Duration.ofSeconds(12)); // 🛡️ BACKUP TIMEOUT
-
-            if (response != null) {
-                String result = extractTextFromResponse(response);
-                // 🚀 METTRE EN CACHE LE RÉSULTAT
-                storyStartCache.put(cacheKey, new CachedStory(result));
-                log.info("💾 Cached new story start for 30 minutes");
-                return result;
-            } else {
-                log.warn("🔄 No response for story start, using fallback");
-                String fallback = generateFallbackStoryStartJSON();
-                // Cache aussi le fallback (pour éviter les appels répétés)
-                storyStartCache.put(cacheKey, new CachedStory(fallback));
-                return fallback;
-            }
-
-        } catch (Exception e) {
-            log.error("❌ Error calling Gemini API for story start: ", e);
-            String fallback = generateFallbackStoryStartJSON();
-            // Cache le fallback aussi
-            storyStartCache.put(cacheKey, new CachedStory(fallback));
-            return fallback;
-        }
+                "Make it engaging and original. Points: 25-35=excellent, 15-24=good, 5-14=average eco impact.";
     }
 
     private String buildPrompt(String context, List<String> choices) {
         // 🚀 PROMPT OPTIMISÉ - Plus court = plus rapide
         return "Continue eco-story. JSON only:\n" +
-                "Previous: " + context + "\n" +
+                "Story context:\n" + context + "\n" +
                 "Choice: " + choices.get(0) + "\n\n" +
                 "{\n" +
                 "  \"title\": \"Next chapter (max 40 chars)\",\n" +
@@ -199,6 +430,18 @@ public class GeminiService {
         throw new RuntimeException("No valid response from Gemini API");
     }
 
+    private String extractTextOrEmpty(GeminiResponse chunk) {
+        if (chunk.getCandidates() == null || chunk.getCandidates().isEmpty()) {
+            return "";
+        }
+        GeminiResponse.Candidate.Content content = chunk.getCandidates().get(0).getContent();
+        if (content == null || content.getParts() == null || content.getParts().isEmpty()) {
+            return "";
+        }
+        String text = content.getParts().get(0).getText();
+        return text != null ? text : "";
+    }
+
     private String generateFallbackNarrative(String context) {
         return "Title: Ecological Challenge | " +
                 "Situation: Following your action, new environmental challenges arise. " +
@@ -210,7 +453,7 @@ public class GeminiService {
                 "Act immediately based on your instinct";
     }
     
-    private String generateFallbackStoryStartJSON() {
+    public String generateFallbackStoryStartJSON() {
         // 🚀 POOL DE FALLBACKS pour plus de variété
         String[] fallbacks = {
             "{\n" +
@@ -242,20 +485,4 @@ public class GeminiService {
         int randomIndex = (int) (Math.random() * fallbacks.length);
         return fallbacks[randomIndex];
     }
-    
-    public String extractJsonFromResponse(String responseText) {
-        if (responseText == null || responseText.trim().isEmpty()) {
-            return null;
-        }
-        
-        // Find the first { and last }
-        int jsonStart = responseText.indexOf('{');
-        int jsonEnd = responseText.lastIndexOf('}');
-        
-        if (jsonStart >= 0 && jsonEnd > jsonStart) {
-            return responseText.substring(jsonStart, jsonEnd + 1);
-        }
-        
-        return null;
-    }
 }
@@ -0,0 +1,204 @@
+package sn.codiallo.ecoBuddy.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Réponses simulées de l'API Gemini (profil gemini-stub) pour les tests de charge
+ * sans clé ni réseau. Les chapitres et analyses respectent le format attendu par
+ * NarrativeService et ScanEnrichmentService ; latence (log-normale : médiane + p99),
+ * blocages, erreurs HTTP et troncatures (finishReason MAX_TOKENS) sont tirés selon
+ * gemini.stub.*. Avec un seed fixé, la séquence de tirages est reproductible.
+ */
+@Service
+@Profile("gemini-stub")
+@Slf4j
+public class GeminiStubService {
+
+    private static final List<String> TITLES = List.of(
+            "Le Marché Zéro Déchet", "La Rivière Oubliée", "Le Quartier Solaire",
+            "La Forêt des Possibles", "Le Défi du Vélo", "Le Jardin Partagé");
+
+    private static final List<String> SITUATIONS = List.of(
+            "Ton quartier organise une journée sans voiture, mais plusieurs voisins s'inquiètent pour leurs courses.",
+            "Une fuite d'eau est repérée dans l'école et personne ne sait qui prévenir.",
+            "Le supermarché local jette chaque soir des invendus encore consommables.",
+            "Un terrain vague pourrait devenir un parking ou un jardin partagé.",
+            "La mairie hésite entre des panneaux solaires et une nouvelle chaudière au fioul.");
+
+    private static final List<String> CHOICES = List.of(
+            "Proposer une solution collective", "Sensibiliser les habitants", "Contacter la mairie",
+            "Lancer une action immédiate", "Chercher un compromis", "Demander conseil à un expert",
+            "Organiser un atelier de réparation", "Mettre en place un compost");
+
+    @Value("${gemini.stub.seed:-1}")
+    private long seed;
+
+    @Value("${gemini.stub.latency.median-ms:800}")
+    private long medianMs;
+
+    @Value("${gemini.stub.latency.p99-ms:4000}")
+    private long p99Ms;
+
+    @Value("${gemini.stub.latency.stall-rate:0.0}")
+    private double stallRate;
+
+    @Value("${gemini.stub.latency.stall-ms:20000}")
+    private long stallMs;
+
+    @Value("${gemini.stub.error-rate:0.0}")
+    private double errorRate;
+
+    @Value("${gemini.stub.error-status:503}")
+    private int errorStatus;
+
+    @Value("${gemini.stub.truncation-rate:0.0}")
+    private double truncationRate;
+
+    @Value("${gemini.stub.completion-rate:0.1}")
+    private double completionRate;
+
+    @Value("${gemini.stub.stream.chunk-chars:40}")
+    private int chunkChars;
+
+    @Value("${gemini.stub.stream.chunk-delay-ms:50}")
+    private long chunkDelayMs;
+
+    private Random random;
+
+    public record StubReply(String text, boolean truncated) {}
+
+    @PostConstruct
+    void init() {
+        random = seed >= 0 ? new Random(seed) : new Random();
+        log.warn("Gemini stub active: median={}ms, p99={}ms, errors={}, truncations={}, stalls={}",
+                medianMs, p99Ms, errorRate, truncationRate, stallRate);
+    }
+
+    /**
+     * Latence du prochain appel : log-normale de médiane et p99 donnés,
+     * ou blocage (stall-ms) pour reproduire les timeouts.
+     */
+    public synchronized Duration nextLatency() {
+        if (random.nextDouble() < stallRate) {
+            return Duration.ofMillis(stallMs);
+        }
+        if (p99Ms <= medianMs) {
+            return Duration.ofMillis(medianMs);
+        }
+        // p99 = médiane * exp(2.326 * sigma)
+        double sigma = Math.log((double) p99Ms / medianMs) / 2.326;
+        return Duration.ofMillis(Math.round(medianMs * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    public synchronized boolean shouldFail() {
+        return random.nextDouble() < errorRate;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public Duration getChunkDelay() {
+        return Duration.ofMillis(chunkDelayMs);
+    }
+
+    /**
+     * Réponse adaptée au prompt : analyse de scan, ouverture ou suite d'histoire.
+     */
+    public synchronized StubReply generate(String prompt) {
+        String text;
+        if (prompt != null && prompt.startsWith("Analyse cet objet")) {
+            text = analysis();
+        } else {
+            boolean continuation = prompt != null && prompt.startsWith("Continue eco-story");
+            text = chapter(continuation);
+        }
+
+        if (random.nextDouble() < truncationRate) {
+            // Coupure entre 30 % et 90 % du texte, comme un maxOutputTokens atteint
+            int cut = (int) (text.length() * (0.3 + 0.6 * random.nextDouble()));
+            return new StubReply(text.substring(0, cut), true);
+        }
+        return new StubReply(text, false);
+    }
+
+    public Map<String, Object> toGeminiResponse(String text, boolean truncated) {
+        Map<String, Object> part = Map.of("text", text);
+        Map<String, Object> content = Map.of("parts", List.of(part), "role", "model");
+
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", content);
+        candidate.put("finishReason", truncated ? "MAX_TOKENS" : "STOP");
+        candidate.put("index", 0);
+        return Map.of("candidates", List.of(candidate));
+    }
+
+    public Map<String, Object> toErrorResponse() {
+        return Map.of("error", Map.of(
+                "code", errorStatus,
+                "message", "Simulated failure (gemini-stub)",
+                "status", errorStatus == 429 ? "RESOURCE_EXHAUSTED" : "UNAVAILABLE"));
+    }
+
+    /**
+     * Découpe le texte en fragments pour streamGenerateContent.
+     */
+    public List<String> chunks(String text) {
+        List<String> chunks = new ArrayList<>();
+        int size = Math.max(1, chunkChars);
+        for (int i = 0; i < text.length(); i += size) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + size)));
+        }
+        return chunks;
+    }
+
+    private String chapter(boolean continuation) {
+        boolean completed = continuation && random.nextDouble() < completionRate;
+        String title = pick(TITLES);
+        String content = pick(SITUATIONS) + " " + pick(SITUATIONS);
+
+        StringBuilder json = new StringBuilder();
+        json.append("```json\n{\n");
+        json.append("  \"title\": \"").append(title).append("\",\n");
+        json.append("  \"content\": \"").append(content).append("\",\n");
+        if (completed) {
+            json.append("  \"choices\": [],\n");
+        } else {
+            List<String> choices = new ArrayList<>(CHOICES);
+            Collections.shuffle(choices, random);
+            json.append("  \"choices\": [\"").append(choices.get(0)).append("\", \"")
+                    .append(choices.get(1)).append("\", \"").append(choices.get(2)).append("\"],\n");
+        }
+        if (continuation) {
+            json.append("  \"points\": ").append(5 + random.nextInt(31)).append(",\n");
+        } else {
+            json.append("  \"points\": [").append(25 + random.nextInt(11)).append(", ")
+                    .append(15 + random.nextInt(10)).append(", ").append(5 + random.nextInt(10)).append("],\n");
+        }
+        json.append("  \"isCompleted\": ").append(completed).append("\n}\n```");
+        return json.toString();
+    }
+
+    private String analysis() {
+        return "Cet objet a un impact environnemental notable tout au long de son cycle de vie, " +
+                "de la fabrication au traitement en fin de vie. Premier conseil : triez-le dans la " +
+                "bonne filière de recyclage. Privilégiez des alternatives durables et réutilisables. " +
+                "Le saviez-vous ? Recycler une tonne de plastique évite environ deux tonnes de CO2.";
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
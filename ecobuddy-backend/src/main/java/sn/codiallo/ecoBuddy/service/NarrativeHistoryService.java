@@ -0,0 +1,158 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.NarrativeStep;
+import sn.codiallo.ecoBuddy.model.StoredChapter;
+import sn.codiallo.ecoBuddy.repository.NarrativeStepRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Historique des sessions narratives : une ligne par étape (insertion seule),
+ * puis compactage qui ne garde que les K dernières étapes et replie les plus
+ * anciennes dans un résumé borné sur la session. La taille des lignes et le
+ * volume écrit par choix restent constants quelle que soit la longueur de l'histoire.
+ * Les étapes d'une session active sont tenues dans un {@link StepBuffer} en mémoire
+ * (voir NarrativeSessionStore) et écrites par lots avec flush() ; une étape repliée
+ * avant d'avoir été écrite n'atteint jamais la base. Le texte des chapitres est lu
+ * dans le {@link ChapterStore}, les étapes n'en gardent que le hash.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NarrativeHistoryService {
+
+    private static final int MAX_CHOICE_LENGTH = 500;
+    private static final int MAX_TITLE_LENGTH = 200;
+    private static final int MAX_SUMMARY_LENGTH = 2000; // taille de la colonne history_summary
+
+    private final NarrativeStepRepository narrativeStepRepository;
+    private final ChapterStore chapterStore;
+
+    @Value("${narrative.history.recent-steps:3}")
+    private int recentSteps;
+
+    @Value("${narrative.history.summary-max-chars:1000}")
+    private int summaryMaxChars;
+
+    /**
+     * Étapes conservées d'une session (au plus K, de la plus ancienne à la plus récente)
+     * et écritures en attente. Protégé par le verrou de la session active.
+     */
+    public static final class StepBuffer {
+        private final List<NarrativeStep> recent;
+        private final List<NarrativeStep> pendingInserts = new ArrayList<>();
+        private final List<NarrativeStep> pendingDeletes = new ArrayList<>();
+
+        private StepBuffer(List<NarrativeStep> recent) {
+            this.recent = new ArrayList<>(recent);
+        }
+
+        public List<NarrativeStep> recent() {
+            return Collections.unmodifiableList(recent);
+        }
+
+        public boolean isDirty() {
+            return !pendingInserts.isEmpty() || !pendingDeletes.isEmpty();
+        }
+    }
+
+    public StepBuffer load(NarrativeSession session) {
+        List<NarrativeStep> steps = narrativeStepRepository.findBySessionOrderByStepNumberAsc(session);
+        for (NarrativeStep step : steps) {
+            step.setContent(chapterStore.find(step.getChapterHash())
+                    .map(StoredChapter::getContent)
+                    .orElse(null));
+        }
+        return new StepBuffer(steps);
+    }
+
+    public StepBuffer newBuffer() {
+        return new StepBuffer(List.of());
+    }
+
+    /**
+     * Ajoute l'étape courante (session.stepCount) en mémoire puis compacte.
+     */
+    public void recordStep(NarrativeSession session, StepBuffer buffer, String choice, StoredChapter chapter) {
+        NarrativeStep step = new NarrativeStep();
+        step.setSession(session);
+        step.setStepNumber(session.getStepCount());
+        step.setChoice(truncate(choice, MAX_CHOICE_LENGTH));
+        step.setTitle(truncate(chapter.getTitle(), MAX_TITLE_LENGTH));
+        step.setChapterHash(chapter.getHash());
+        step.setContent(chapter.getContent());
+        buffer.recent.add(step);
+        buffer.pendingInserts.add(step);
+
+        compact(session, buffer);
+    }
+
+    /**
+     * Écrit les étapes en attente ; à appeler dans la transaction qui enregistre la session.
+     */
+    public void flush(StepBuffer buffer) {
+        if (!buffer.pendingDeletes.isEmpty()) {
+            narrativeStepRepository.deleteAllInBatch(buffer.pendingDeletes);
+            buffer.pendingDeletes.clear();
+        }
+        if (!buffer.pendingInserts.isEmpty()) {
+            narrativeStepRepository.saveAll(buffer.pendingInserts);
+            buffer.pendingInserts.clear();
+        }
+    }
+
+    private void compact(NarrativeSession session, StepBuffer buffer) {
+        if (buffer.recent.size() <= recentSteps) {
+            return;
+        }
+
+        List<NarrativeStep> oldest = buffer.recent.subList(0, buffer.recent.size() - recentSteps);
+        List<NarrativeStep> folded = new ArrayList<>(oldest);
+        oldest.clear();
+
+        StringBuilder summary = new StringBuilder(session.getHistorySummary() != null ? session.getHistorySummary() : "");
+        for (NarrativeStep step : folded) {
+            if (!summary.isEmpty()) {
+                summary.append('\n');
+            }
+            summary.append(step.getStepNumber()).append(". ");
+            if (step.getChoice() != null) {
+                summary.append(step.getChoice()).append(" -> ");
+            }
+            summary.append(step.getTitle() != null ? step.getTitle() : "Chapitre");
+
+            // Pas encore écrite : il suffit de ne pas l'insérer
+            if (!buffer.pendingInserts.removeIf(pending -> pending == step)) {
+                buffer.pendingDeletes.add(step);
+            }
+        }
+
+        session.setHistorySummary(trimOldestLines(summary.toString()));
+        log.debug("Compacted {} narrative steps for session {}", folded.size(), session.getSessionId());
+    }
+
+    // Les lignes les plus anciennes sortent du résumé en premier
+    private String trimOldestLines(String summary) {
+        int maxChars = Math.min(summaryMaxChars, MAX_SUMMARY_LENGTH);
+        String trimmed = summary;
+        while (trimmed.length() > maxChars) {
+            int newline = trimmed.indexOf('\n');
+            if (newline < 0) {
+                return trimmed.substring(trimmed.length() - maxChars);
+            }
+            trimmed = trimmed.substring(newline + 1);
+        }
+        return trimmed;
+    }
+
+    private String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,80 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.NarrativeStep;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contexte de continuation d'histoire assemblé sous un budget de tokens estimé.
+ * Par ordre de priorité : état clé (chapitre, points, thème), chapitre courant,
+ * étapes récentes (des plus récentes aux plus anciennes), puis résumé de session.
+ * Chaque bloc est tronqué ou omis pour tenir dans le budget.
+ */
+@Service
+public class NarrativePromptBuilder {
+
+    // Estimation grossière : ~4 caractères par token
+    private static final int CHARS_PER_TOKEN = 4;
+
+    @Value("${narrative.prompt.context-token-budget:400}")
+    private int contextTokenBudget;
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @param recentSteps étapes conservées de la session, de la plus ancienne à la plus récente
+     */
+    public String buildContext(NarrativeSession session, List<NarrativeStep> recentSteps, int userPoints, String theme) {
+        int remaining = contextTokenBudget * CHARS_PER_TOKEN;
+
+        String state = "State: chapter " + (session.getStepCount() + 1) + ", player points " + userPoints
+                + ", theme " + theme + ".";
+        remaining -= state.length();
+
+        String current = "";
+        List<String> earlier = new ArrayList<>();
+        for (int i = recentSteps.size() - 1; i >= 0 && remaining > 0; i--) {
+            NarrativeStep step = recentSteps.get(i);
+            if (i == recentSteps.size() - 1) {
+                current = fit("Current chapter: " + step.getTitle() + " - " + step.getContent(), remaining);
+                remaining -= current.length();
+            } else {
+                String line = fit("Earlier: " + (step.getChoice() != null ? step.getChoice() + " -> " : "")
+                        + step.getTitle() + " - " + step.getContent(), remaining);
+                earlier.add(0, line);
+                remaining -= line.length();
+            }
+        }
+
+        String summary = "";
+        if (remaining > 0 && session.getHistorySummary() != null && !session.getHistorySummary().isBlank()) {
+            // Le résumé est tronqué par le début : ses lignes les plus récentes sont les plus utiles
+            String text = "Story so far:\n" + session.getHistorySummary();
+            summary = text.length() > remaining ? text.substring(text.length() - remaining) : text;
+        }
+
+        StringBuilder context = new StringBuilder();
+        if (!summary.isEmpty()) {
+            context.append(summary).append('\n');
+        }
+        earlier.forEach(line -> context.append(line).append('\n'));
+        if (!current.isEmpty()) {
+            context.append(current).append('\n');
+        }
+        context.append(state);
+        return context.toString();
+    }
+
+    private String fit(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        return maxChars > 3 ? text.substring(0, maxChars - 3) + "..." : "";
+    }
+}
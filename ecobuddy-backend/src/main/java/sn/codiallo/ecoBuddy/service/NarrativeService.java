@@ -5,10 +5,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import sn.codiallo.ecoBuddy.dto.*;
+import sn.codiallo.ecoBuddy.model.ChapterChoice;
 import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.StoredChapter;
 import sn.codiallo.ecoBuddy.model.StoryHistory;
 import sn.codiallo.ecoBuddy.model.User;
 import sn.codiallo.ecoBuddy.repository.NarrativeSessionRepository;
@@ -17,8 +27,12 @@ import sn.codiallo.ecoBuddy.repository.UserRepository;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -28,54 +42,102 @@ import java.util.regex.Matcher;
 public class NarrativeService {
 
     private final GeminiService geminiService;
+    private final StoryStartPool storyStartPool;
+    private final ChapterSpeculationService chapterSpeculationService;
+    private final StoryGraphCache storyGraphCache;
+    private final NarrativeHistoryService narrativeHistoryService;
+    private final NarrativeSessionStore narrativeSessionStore;
+    private final NarrativePromptBuilder narrativePromptBuilder;
+    private final ChapterStore chapterStore;
     private final NarrativeSessionRepository narrativeSessionRepository;
     private final StoryHistoryRepository storyHistoryRepository;
     private final UserRepository userRepository;
     private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
 
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
 
-    @Transactional
-    public NarrativeStartResponse startNarrative(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    /**
+     * Démarre une histoire à partir d'une ouverture pré-générée (StoryStartPool) :
+     * aucun appel Gemini sur ce chemin, seule la session est écrite.
+     */
+    public Mono<NarrativeStartResponse> startNarrative(String username) {
+        return Mono.fromCallable(() -> {
+            Long userId = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new RuntimeException("User not found")).getId();
+            String opening = storyStartPool.take();
+            return startSession(userId, opening);
+        });
+    }
 
-        // Désactiver toutes les sessions actives de l'utilisateur
-        List<NarrativeSession> activeSessions = narrativeSessionRepository.findByUserAndIsActiveTrue(user);
-        activeSessions.forEach(session -> session.setIsActive(false));
-        narrativeSessionRepository.saveAll(activeSessions);
+    /**
+     * Variante streaming de startNarrative : titre, fragments de contenu puis choix
+     * au fil de la génération, et un événement "done" une fois la session enregistrée.
+     */
+    public Flux<NarrativeStreamEvent> streamStartNarrative(String username) {
+        return Mono.fromCallable(() -> userRepository.findByUsername(username)
+                        .orElseThrow(() -> new RuntimeException("User not found")).getId())
+                .flatMapMany(userId -> streamChapter(Mono.fromSupplier(storyStartPool::take).flux(),
+                        text -> startSession(userId, text)));
+    }
 
-        // Créer une nouvelle session
-        String sessionId = UUID.randomUUID().toString();
-        NarrativeSession session = new NarrativeSession();
-        session.setUser(user);
-        session.setSessionId(sessionId);
-        session.setStepCount(0);
-        session.setIsActive(true);
-        session.setConversationHistory("[]");
+    private NarrativeStartResponse startSession(Long userId, String responseText) {
+        // Désactiver toutes les sessions actives de l'utilisateur (points en attente écrits au passage)
+        narrativeSessionStore.deactivateUserSessions(userId);
+        return inTransaction(() -> completeStart(userId, responseText));
+    }
+
+    private NarrativeStartResponse completeStart(Long userId, String responseText) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
 
         try {
-            // Utiliser GeminiService pour démarrer l'histoire
-            String responseText = geminiService.generateStoryStart();
-            String jsonResponse = geminiService.extractJsonFromResponse(responseText);
-            
+
+            // Créer une nouvelle session
+            String sessionId = UUID.randomUUID().toString();
+            NarrativeSession session = new NarrativeSession();
+            session.setUser(user);
+            session.setSessionId(sessionId);
+            session.setStepCount(0);
+            session.setIsActive(true);
+
+            ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse(responseText);
+
             StoryResponse storyResponse;
-            if (jsonResponse != null) {
-                // Parser la réponse JSON
-                storyResponse = parseJsonStoryResponse(jsonResponse);
+            if (chapter.found()) {
+                storyResponse = toStoryResponse(chapter);
             } else {
-                // Fallback vers l'ancien parsing si JSON échoue
-                log.warn("JSON parsing failed, using fallback parsing");
+                // Pas d'objet JSON (ancien format texte) : parsing par motifs
+                log.warn("No JSON object in story response, using fallback parsing");
                 storyResponse = parseGeminiStoryResponse(responseText);
             }
-            
-            session.setCurrentStory(jsonResponse != null ? jsonResponse : responseText);
-            session.setConversationHistory(updateConversationHistory("[]", "Start story", responseText));
+
+            StoredChapter stored = storeChapter(storyResponse, chapter.found() ? null : responseText);
+            session.setCurrentChapterHash(stored.getHash());
+            storeChoices(session, storyResponse);
             
             narrativeSessionRepository.save(session);
 
+            // La première étape part avec les prochaines écritures de la session
+            NarrativeHistoryService.StepBuffer steps = narrativeHistoryService.newBuffer();
+            narrativeHistoryService.recordStep(session, steps, null, stored);
+
+            // Mise en mémoire et spéculation seulement si la session est bien insérée
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    NarrativeSessionStore.ActiveSession active = narrativeSessionStore.register(session, user, steps);
+
+                    // Préparer la suite de chaque choix pendant la lecture
+                    if (!storyResponse.getIsCompleted()) {
+                        chapterSpeculationService.speculate(sessionId, session.getStepCount(),
+                                buildPromptContext(active), storyResponse.getChoices());
+                    }
+                }
+            });
+
             // Générer un ID unique pour cette étape
             String storyId = UUID.randomUUID().toString();
             
@@ -99,84 +161,168 @@ public class NarrativeService {
         }
     }
 
-    @Transactional
-    public NarrativeChoiceResponse processChoice(String sessionId, String choice, String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    // Données lues avant l'appel Gemini, réutilisées pour finaliser le choix
+    private record ChoiceContext(Long userId, String sessionId, int stepCount, String promptContext,
+                                 String choice, String choiceText, int pointsEarned,
+                                 String parentChapterHash, int choiceIndex) {}
+
+    public Mono<NarrativeChoiceResponse> processChoice(String sessionId, String choice, String username) {
+        return Mono.fromCallable(() -> prepareChoice(sessionId, choice, username))
+                .flatMap(context -> {
+                    Mono<String> fresh = Mono.defer(() -> geminiService
+                            .generateNarrativeAsync(context.promptContext(), List.of(context.choiceText())));
+                    return chapterSpeculationService
+                            .claim(context.sessionId(), context.stepCount(), context.choiceText())
+                            .map(speculated -> speculated.switchIfEmpty(fresh))
+                            .or(() -> storyGraphCache.lookup(context.parentChapterHash(), context.choiceIndex())
+                                    .map(Mono::just))
+                            .orElse(fresh)
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(responseText -> completeChoice(context, responseText));
+                });
+    }
 
-        NarrativeSession session = narrativeSessionRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+    public Flux<NarrativeStreamEvent> streamChoice(String sessionId, String choice, String username) {
+        return Mono.fromCallable(() -> prepareChoice(sessionId, choice, username))
+                .flatMapMany(context -> streamChapter(
+                        chapterSpeculationService
+                                .claim(context.sessionId(), context.stepCount(), context.choiceText())
+                                .map(speculated -> speculated.flux().switchIfEmpty(Flux.defer(() -> geminiService
+                                        .streamNarrative(context.promptContext(), List.of(context.choiceText())))))
+                                .or(() -> storyGraphCache.lookup(context.parentChapterHash(), context.choiceIndex())
+                                        .map(Flux::just))
+                                .orElseGet(() -> geminiService
+                                        .streamNarrative(context.promptContext(), List.of(context.choiceText()))),
+                        text -> completeChoice(context, text)));
+    }
 
-        if (!session.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Session does not belong to user");
-        }
+    private Flux<NarrativeStreamEvent> streamChapter(Flux<String> fragments, Function<String, Object> finalizer) {
+        return Flux.defer(() -> {
+            ChapterStreamParser parser = new ChapterStreamParser();
+            Mono<NarrativeStreamEvent> done = Mono
+                    .fromCallable(() -> new NarrativeStreamEvent("done", finalizer.apply(parser.text())))
+                    .subscribeOn(Schedulers.boundedElastic());
+            return fragments.concatMapIterable(parser::feed).concatWith(done);
+        });
+    }
 
-        if (!session.getIsActive()) {
-            throw new RuntimeException("Session is not active");
-        }
+    // Lu dans la session en mémoire (NarrativeSessionStore) : aucune requête une fois la session chargée
+    private ChoiceContext prepareChoice(String sessionId, String choice, String username) {
+        return narrativeSessionStore.withSession(sessionId, active -> {
+            NarrativeSession session = active.getSession();
 
-        try {
-            // Convertir l'index du choix en texte si nécessaire et récupérer les points du choix précédent
-            String choiceText = extractChoiceText(session.getCurrentStory(), choice);
-            Integer pointsEarned = extractPointsForChoice(session.getCurrentStory(), choice);
-
-            // Utiliser GeminiService pour générer la suite de l'histoire
-            String responseText = geminiService.generateNarrative(session.getCurrentStory(), List.of(choiceText));
-            String jsonResponse = geminiService.extractJsonFromResponse(responseText);
-
-            ChoiceResponse choiceResponse;
-            if (jsonResponse != null) {
-                // Parser la réponse JSON
-                choiceResponse = parseJsonChoiceResponse(jsonResponse);
-            } else {
-                // Fallback vers l'ancien parsing si JSON échoue
-                log.warn("JSON parsing failed for choice response, using fallback parsing");
-                choiceResponse = parseGeminiChoiceResponse(responseText);
+            if (!active.getUsername().equals(username)) {
+                throw new RuntimeException("Session does not belong to user");
             }
 
-            session.setCurrentStory(jsonResponse != null ? jsonResponse : responseText);
-            session.setStepCount(session.getStepCount() + 1);
-            session.setConversationHistory(updateConversationHistory(session.getConversationHistory(), choice, responseText));
-
-            // Attribuer les points IMMÉDIATEMENT après le choix (utiliser les points du choix précédent)
-            if (pointsEarned > 0) {
-                user.setPoints(user.getPoints() + pointsEarned);
-                userRepository.save(user);
-                log.info("User {} earned {} points for choice: {}", username, pointsEarned, choice);
+            if (!session.getIsActive()) {
+                throw new RuntimeException("Session is not active");
             }
 
-            // Marquer l'histoire comme terminée si nécessaire
-            if (choiceResponse.getIsCompleted()) {
-                session.setIsActive(false);
-                log.info("Story completed for user {}", username);
+            // Texte et points du choix lus dans les choix enregistrés avec le chapitre courant
+            ChapterChoice chapterChoice = resolveChoice(session, choice);
 
-                // Sauvegarder automatiquement dans l'historique
-                saveCompletedStoryToHistory(session, user, choiceResponse);
+            // Index dans le graphe partagé seulement pour un choix réellement proposé
+            int choiceIndex = session.getChoices().indexOf(chapterChoice);
+
+            return new ChoiceContext(active.getUserId(), sessionId, session.getStepCount(), buildPromptContext(active),
+                    choice, chapterChoice.getText(), chapterChoice.getPoints(),
+                    session.getCurrentChapterHash(), choiceIndex);
+        });
+    }
+
+    // Contexte de continuation borné (résumé + étapes récentes + état) au lieu du chapitre JSON brut
+    private String buildPromptContext(NarrativeSessionStore.ActiveSession active) {
+        NarrativeSession session = active.getSession();
+        return narrativePromptBuilder.buildContext(session, active.getSteps().recent(),
+                active.getUserPoints(), extractThemeFromContent(currentStoryOf(session)));
+    }
+
+    private NarrativeChoiceResponse completeChoice(ChoiceContext context, String responseText) {
+        ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse(responseText);
+
+        ChoiceResponse choiceResponse;
+        if (chapter.found()) {
+            choiceResponse = toChoiceResponse(chapter);
+        } else {
+            // Pas d'objet JSON (ancien format texte) : parsing par motifs
+            log.warn("No JSON object in choice response, using fallback parsing");
+            choiceResponse = parseGeminiChoiceResponse(responseText);
+        }
+        StoredChapter stored = storeChapter(choiceResponse, chapter.found() ? null : responseText);
+
+        NarrativeChoiceResponse response = narrativeSessionStore.withSession(context.sessionId(), active -> {
+            NarrativeSession session = active.getSession();
+
+            // La session a pu avancer ou se terminer pendant l'appel Gemini (double envoi)
+            if (!session.getIsActive() || session.getStepCount() != context.stepCount()) {
+                throw new RuntimeException("Choice already processed for this step");
             }
 
-            narrativeSessionRepository.save(session);
+            try {
+                String username = active.getUsername();
+                int pointsEarned = context.pointsEarned();
+
+                session.setCurrentChapterHash(stored.getHash());
+                session.setCurrentStory(null);
+                storeChoices(session, choiceResponse);
+                session.setStepCount(session.getStepCount() + 1);
+
+                // Attribuer les points IMMÉDIATEMENT après le choix (utiliser les points du choix précédent)
+                if (pointsEarned > 0) {
+                    active.addPoints(pointsEarned);
+                    log.info("User {} earned {} points for choice: {}", username, pointsEarned, context.choice());
+                }
 
-            // Générer un ID unique pour cette étape
-            String storyId = UUID.randomUUID().toString();
-            
-            return new NarrativeChoiceResponse(
-                    storyId,
-                    sessionId,
-                    choiceResponse.getTitle(),
-                    choiceResponse.getContent(),
-                    choiceResponse.getChoices(),
-                    choiceResponse.getChoicePoints(), // Array des points pour chaque choix
-                    session.getStepCount(), // chapterNumber
-                    pointsEarned, // points gagnés pour ce choix
-                    user.getPoints(), // points totaux actualisés
-                    choiceResponse.getIsCompleted(),
-                    "success" // status
-            );
+                narrativeHistoryService.recordStep(session, active.getSteps(), context.choiceText(), stored);
 
-        } catch (Exception e) {
-            log.error("Error processing choice: ", e);
-            throw new RuntimeException("Failed to process choice: " + e.getMessage());
+                // Marquer l'histoire comme terminée si nécessaire
+                if (choiceResponse.getIsCompleted()) {
+                    session.setIsActive(false);
+                    log.info("Story completed for user {}", username);
+
+                    narrativeSessionStore.complete(active);
+                    // Sauvegarder automatiquement dans l'historique
+                    saveCompletedStoryToHistory(session, active.getUserId(), active.getUserPoints());
+                    chapterSpeculationService.discard(context.sessionId());
+                } else {
+                    narrativeSessionStore.stepRecorded(active);
+                    chapterSpeculationService.speculate(context.sessionId(), session.getStepCount(),
+                            buildPromptContext(active), choiceResponse.getChoices());
+                }
+
+                // Générer un ID unique pour cette étape
+                String storyId = UUID.randomUUID().toString();
+
+                return new NarrativeChoiceResponse(
+                        storyId,
+                        context.sessionId(),
+                        choiceResponse.getTitle(),
+                        choiceResponse.getContent(),
+                        choiceResponse.getChoices(),
+                        choiceResponse.getChoicePoints(), // Array des points pour chaque choix
+                        session.getStepCount(), // chapterNumber
+                        pointsEarned, // points gagnés pour ce choix
+                        active.getUserPoints(), // points totaux actualisés
+                        choiceResponse.getIsCompleted(),
+                        "success" // status
+                );
+
+            } catch (Exception e) {
+                log.error("Error processing choice: ", e);
+                throw new RuntimeException("Failed to process choice: " + e.getMessage());
+            }
+        });
+
+        // Seules les réponses JSON complètes alimentent le graphe partagé (pas de fallback ni de troncature)
+        if (chapter.found() && !chapter.truncated()) {
+            storyGraphCache.record(context.parentChapterHash(), context.choiceIndex(), responseText);
         }
+        return response;
+    }
+
+    private <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
     }
 
     private StoryResponse parseGeminiStoryResponse(String responseText) {
@@ -250,16 +396,6 @@ public class NarrativeService {
         }
     }
 
-    private String updateConversationHistory(String history, String prompt, String response) {
-        try {
-            // Pour simplifier, on peut stocker l'historique comme du texte
-            return history + "\nPrompt: " + prompt + "\nResponse: " + response;
-        } catch (Exception e) {
-            log.warn("Error updating conversation history: ", e);
-            return history;
-        }
-    }
-    
     /**
      * Sépare le titre et le contenu à partir de la réponse de l'histoire.
      * Si le format est "Titre: xxx | Situation: yyy", sépare proprement.
@@ -325,95 +461,95 @@ public class NarrativeService {
         }
     }
 
-    // Nouveau parsing JSON robuste
-    private StoryResponse parseJsonStoryResponse(String jsonResponse) {
-        try {
-            StoryResponse response = new StoryResponse();
+    // Liaison directe du chapitre lu en une passe (réponse éventuellement réparée)
+    private StoryResponse toStoryResponse(ChapterStreamParser.Chapter chapter) {
+        logIfTruncated(chapter);
+
+        StoryResponse response = new StoryResponse();
+        response.setTitle(chapter.title() != null ? chapter.title() : "Aventure Écologique");
+        response.setContent(chapter.content() != null ? chapter.content() : "");
+        response.setIsCompleted(Boolean.TRUE.equals(chapter.isCompleted()));
+        response.setChoices(chapterChoices(chapter));
+        response.setChoicePoints(choicePoints(chapter, response.getChoices()));
+        return response;
+    }
 
-            // Parse JSON avec Jackson
-            var jsonNode = objectMapper.readTree(jsonResponse);
+    private ChoiceResponse toChoiceResponse(ChapterStreamParser.Chapter chapter) {
+        logIfTruncated(chapter);
+
+        ChoiceResponse response = new ChoiceResponse();
+        response.setTitle(chapter.title() != null ? chapter.title() : "Suite de l'Histoire");
+        response.setContent(chapter.content() != null ? chapter.content() : "");
+        response.setPointsEarned(chapter.points() != null ? chapter.points() : 15);
+        response.setIsCompleted(Boolean.TRUE.equals(chapter.isCompleted()));
+        response.setChoices(chapterChoices(chapter));
+        response.setChoicePoints(choicePoints(chapter, response.getChoices()));
+        return response;
+    }
 
-            response.setTitle(jsonNode.path("title").asText("Aventure Écologique"));
-            response.setContent(jsonNode.path("content").asText(""));
-            response.setIsCompleted(jsonNode.path("isCompleted").asBoolean(false));
+    private void logIfTruncated(ChapterStreamParser.Chapter chapter) {
+        if (chapter.truncated()) {
+            log.warn("Truncated Gemini response repaired (title={}, choices={})",
+                    chapter.title() != null, chapter.choices() != null ? chapter.choices().size() : 0);
+        }
+    }
 
-            // Parser les choix
-            List<String> choices = new ArrayList<>();
-            var choicesArray = jsonNode.path("choices");
-            if (choicesArray.isArray()) {
-                choicesArray.forEach(choice -> choices.add(choice.asText()));
-            }
-            response.setChoices(choices);
+    private List<String> chapterChoices(ChapterStreamParser.Chapter chapter) {
+        if (chapter.choices() != null && !chapter.choices().isEmpty()) {
+            return chapter.choices();
+        }
+        // Réponse coupée avant les choix : null pour garder les choix par défaut
+        if (chapter.truncated() && !Boolean.TRUE.equals(chapter.isCompleted())) {
+            return null;
+        }
+        return new ArrayList<>();
+    }
 
-            // Parser les points pour chaque choix (nouveau format)
-            List<Integer> choicePoints = new ArrayList<>();
-            var pointsArray = jsonNode.path("points");
-            if (pointsArray.isArray()) {
-                pointsArray.forEach(points -> choicePoints.add(points.asInt(10))); // défaut 10 points
-            } else if (pointsArray.isInt()) {
-                // Compatibilité ancien format : si c'est un seul nombre, l'utiliser pour tous les choix
-                int singlePoints = pointsArray.asInt(0);
-                for (int i = 0; i < choices.size(); i++) {
-                    choicePoints.add(singlePoints);
-                }
-            } else {
-                // Si pas de points définis, utiliser des valeurs par défaut
-                for (int i = 0; i < choices.size(); i++) {
-                    choicePoints.add(15); // défaut 15 points par choix
-                }
+    private List<Integer> choicePoints(ChapterStreamParser.Chapter chapter, List<String> choices) {
+        List<Integer> choicePoints = new ArrayList<>();
+        if (chapter.pointsPerChoice() != null) {
+            choicePoints.addAll(chapter.pointsPerChoice());
+            // Tableau tronqué : compléter pour garder un score par choix
+            while (choicePoints.size() < choices.size()) {
+                choicePoints.add(15);
+            }
+        } else {
+            // Compatibilité ancien format : un seul nombre pour tous les choix, sinon 15 par choix
+            int points = chapter.points() != null ? chapter.points() : 15;
+            for (int i = 0; i < choices.size(); i++) {
+                choicePoints.add(points);
             }
-            response.setChoicePoints(choicePoints);
-
-            return response;
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON story response: ", e);
-            throw new RuntimeException("Invalid JSON response from AI service");
         }
+        return choicePoints;
     }
 
-    private ChoiceResponse parseJsonChoiceResponse(String jsonResponse) {
-        try {
-            ChoiceResponse response = new ChoiceResponse();
-
-            // Parse JSON avec Jackson
-            var jsonNode = objectMapper.readTree(jsonResponse);
-
-            response.setTitle(jsonNode.path("title").asText("Suite de l'Histoire"));
-            response.setContent(jsonNode.path("content").asText(""));
-            response.setPointsEarned(jsonNode.path("points").asInt(15));
-            response.setIsCompleted(jsonNode.path("isCompleted").asBoolean(false));
-
-            // Parser les choix
-            List<String> choices = new ArrayList<>();
-            var choicesArray = jsonNode.path("choices");
-            if (choicesArray.isArray()) {
-                choicesArray.forEach(choice -> choices.add(choice.asText()));
-            }
-            response.setChoices(choices);
+    /**
+     * Chapitre partagé dans la table chapters ; rawText pour l'ancien format texte.
+     */
+    private StoredChapter storeChapter(StoryResponse response, String rawText) {
+        String payload = rawText != null ? rawText : toStoredJson(response);
+        return chapterStore.intern(response.getTitle(), response.getContent(), payload);
+    }
 
-            // Parser les points pour chaque choix (nouveau format)
-            List<Integer> choicePoints = new ArrayList<>();
-            var pointsArray = jsonNode.path("points");
-            if (pointsArray.isArray()) {
-                pointsArray.forEach(points -> choicePoints.add(points.asInt(10))); // défaut 10 points
-            } else if (pointsArray.isInt()) {
-                // Compatibilité ancien format : si c'est un seul nombre, l'utiliser pour tous les choix
-                int singlePoints = pointsArray.asInt(15);
-                for (int i = 0; i < choices.size(); i++) {
-                    choicePoints.add(singlePoints);
-                }
-            } else {
-                // Si pas de points définis, utiliser des valeurs par défaut
-                for (int i = 0; i < choices.size(); i++) {
-                    choicePoints.add(15); // défaut 15 points par choix
-                }
-            }
-            response.setChoicePoints(choicePoints);
+    // Chapitre courant : table chapters, ou copie des sessions antérieures
+    private String currentStoryOf(NarrativeSession session) {
+        return chapterStore.find(session.getCurrentChapterHash())
+                .map(StoredChapter::getPayload)
+                .orElse(session.getCurrentStory());
+    }
 
-            return response;
+    // Forme normalisée conservée dans la session (réponse réparée, sans prose autour)
+    private String toStoredJson(StoryResponse response) {
+        Map<String, Object> stored = new LinkedHashMap<>();
+        stored.put("title", response.getTitle());
+        stored.put("content", response.getContent());
+        stored.put("choices", response.getChoices());
+        stored.put("points", response.getChoicePoints());
+        stored.put("isCompleted", response.getIsCompleted());
+        try {
+            return objectMapper.writeValueAsString(stored);
         } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON choice response: ", e);
-            throw new RuntimeException("Invalid JSON response from AI service");
+            throw new RuntimeException("Failed to serialize chapter", e);
         }
     }
 
@@ -454,33 +590,52 @@ public class NarrativeService {
 
     // ========== MÉTHODES POUR LA GESTION DE L'HISTORIQUE ==========
 
-    @Transactional
-    public StoryHistoryListResponse getStoryHistory(String username, int page, int size) {
+    /**
+     * Historique paginé par curseur sur (completed_at, id) : le coût d'une page ne dépend
+     * pas du nombre d'histoires. Sans curseur, page sert d'offset (anciens clients).
+     */
+    @Transactional(readOnly = true)
+    public StoryHistoryListResponse getStoryHistory(String username, int page, int size, String cursor) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        // Récupérer l'historique
-        List<StoryHistory> stories = storyHistoryRepository.findByUserOrderByCompletedAtDesc(user);
-
-        // Pagination simple
-        int startIndex = Math.min(page * size, stories.size());
-        int endIndex = Math.min(startIndex + size, stories.size());
-        List<StoryHistory> paginatedStories = stories.subList(startIndex, endIndex);
+        int pageSize = Math.max(1, Math.min(size, 100));
+
+        // Statistiques en une seule requête d'agrégat
+        StoryHistoryRepository.HistoryStats historyStats =
+                storyHistoryRepository.getStats(user.getId(), StoryHistory.StoryStatus.COMPLETED);
+        StoryHistoryListResponse.StoryHistoryStatsResponse stats = new StoryHistoryListResponse.StoryHistoryStatsResponse(
+                historyStats.getCompletedCount(), historyStats.getTotalPoints(), historyStats.getTotalCount());
+
+        boolean keyset = cursor != null && !cursor.isBlank();
+        List<StoryHistory> stories;
+        boolean hasMore;
+        if (keyset || page <= 0) {
+            // Une ligne de plus pour savoir s'il existe une page suivante
+            stories = keyset
+                    ? findPageAfter(user.getId(), StoryHistoryCursor.decode(cursor), pageSize + 1)
+                    : storyHistoryRepository.findPage(user.getId(), PageRequest.of(0, pageSize + 1));
+            hasMore = stories.size() > pageSize;
+            if (hasMore) {
+                stories = stories.subList(0, pageSize);
+            }
+        } else {
+            // Offset appliqué en base pour les clients qui paginent encore par numéro de page
+            stories = storyHistoryRepository.findPage(user.getId(), PageRequest.of(page, pageSize));
+            hasMore = (long) (page + 1) * pageSize < historyStats.getTotalCount();
+        }
 
-        // Convertir en DTOs
-        List<StoryHistoryResponse> storyResponses = paginatedStories.stream()
+        List<StoryHistoryResponse> storyResponses = stories.stream()
                 .map(StoryHistoryResponse::new)
                 .toList();
 
-        // Calculer les statistiques
-        Long completedCount = storyHistoryRepository.countByUserAndStatus(user, StoryHistory.StoryStatus.COMPLETED);
-        Long totalPoints = storyHistoryRepository.sumTotalPointsByUser(user);
-        Long totalCount = (long) stories.size();
+        String nextCursor = hasMore && !stories.isEmpty() ? StoryHistoryCursor.of(stories.get(stories.size() - 1)).encode() : null;
 
-        StoryHistoryListResponse.StoryHistoryStatsResponse stats =
-                new StoryHistoryListResponse.StoryHistoryStatsResponse(completedCount, totalPoints, totalCount);
+        return new StoryHistoryListResponse(storyResponses, stats, nextCursor);
+    }
 
-        return new StoryHistoryListResponse(storyResponses, stats);
+    private List<StoryHistory> findPageAfter(Long userId, StoryHistoryCursor after, int limit) {
+        return storyHistoryRepository.findPageAfter(userId, after.completedAt(), after.id(), PageRequest.of(0, limit));
     }
 
     @Transactional
@@ -521,8 +676,10 @@ public class NarrativeService {
         return new StoryHistoryResponse(storyHistory);
     }
 
-    private void saveCompletedStoryToHistory(NarrativeSession session, User user, ChoiceResponse choiceResponse) {
+    private void saveCompletedStoryToHistory(NarrativeSession session, Long userId, int totalPoints) {
         try {
+            User user = userRepository.getReferenceById(userId);
+
             // Éviter les doublons
             if (storyHistoryRepository.existsBySessionIdAndUser(session.getSessionId(), user)) {
                 log.info("Story history already exists for session {}", session.getSessionId());
@@ -530,22 +687,22 @@ public class NarrativeService {
             }
 
             // Extraire le titre et le résumé depuis le contenu de l'histoire
-            String[] titleAndContent = separateTitleAndContent(session.getCurrentStory());
+            String[] titleAndContent = separateTitleAndContent(currentStoryOf(session));
 
             StoryHistory storyHistory = new StoryHistory();
             storyHistory.setUser(user);
             storyHistory.setSessionId(session.getSessionId());
             storyHistory.setTitle(titleAndContent[0]);
             storyHistory.setSummary(createSummary(titleAndContent[1]));
-            storyHistory.setTotalPoints(user.getPoints()); // Points totaux actuels de l'utilisateur
+            storyHistory.setTotalPoints(totalPoints); // Points totaux actuels de l'utilisateur
             storyHistory.setChapterCount(session.getStepCount());
             storyHistory.setStatus(StoryHistory.StoryStatus.COMPLETED);
-            storyHistory.setTheme(extractThemeFromContent(session.getCurrentStory()));
+            storyHistory.setTheme(extractThemeFromContent(currentStoryOf(session)));
 
             storyHistoryRepository.save(storyHistory);
 
             log.info("Auto-saved completed story to history for user {} with session {}",
-                    user.getUsername(), session.getSessionId());
+                    userId, session.getSessionId());
 
         } catch (Exception e) {
             log.error("Error saving completed story to history: ", e);
@@ -588,67 +745,35 @@ public class NarrativeService {
         return "general";
     }
 
-    private String extractChoiceText(String currentStory, String choice) {
-        try {
-            // Si le choix est un nombre (index), extraire le texte du choix correspondant
-            int choiceIndex = Integer.parseInt(choice);
-
-            // Parser les choix depuis l'histoire actuelle
-            if (currentStory != null) {
-                // Essayer de parser le JSON d'abord
-                try {
-                    var jsonNode = objectMapper.readTree(currentStory);
-                    var choicesArray = jsonNode.path("choices");
-                    if (choicesArray.isArray() && choiceIndex >= 0 && choiceIndex < choicesArray.size()) {
-                        return choicesArray.get(choiceIndex).asText();
-                    }
-                } catch (Exception e) {
-                    // Fallback vers l'ancien format si JSON échoue
-                    if (currentStory.contains("Choix:")) {
-                        int choixStart = currentStory.indexOf("Choix:");
-                        String choixSection = currentStory.substring(choixStart + 6).trim();
-                        String[] rawChoices = choixSection.split("\\|");
-
-                        if (choiceIndex >= 0 && choiceIndex < rawChoices.length) {
-                            return rawChoices[choiceIndex].trim();
-                        }
-                    }
-                }
-            }
-
-            // Si on ne peut pas extraire le choix, retourner un choix générique
-            return "Choix " + (choiceIndex + 1);
+    private void storeChoices(NarrativeSession session, StoryResponse response) {
+        List<String> choices = response.getChoices();
+        List<Integer> choicePoints = response.getChoicePoints();
 
-        } catch (NumberFormatException e) {
-            // Si ce n'est pas un nombre, c'est déjà le texte du choix
-            return choice;
+        session.getChoices().clear();
+        for (int i = 0; i < choices.size(); i++) {
+            String text = choices.get(i);
+            int points = i < choicePoints.size() ? choicePoints.get(i) : 15;
+            session.getChoices().add(new ChapterChoice(text.length() > 500 ? text.substring(0, 500) : text, points));
         }
     }
 
-    private Integer extractPointsForChoice(String currentStory, String choice) {
+    /**
+     * Le client envoie l'index du choix (ou, plus rarement, son texte).
+     * Un choix inconnu vaut 15 points, comme auparavant.
+     */
+    private ChapterChoice resolveChoice(NarrativeSession session, String choice) {
+        List<ChapterChoice> choices = session.getChoices();
         try {
-            // Si le choix est un nombre (index), extraire les points correspondants
             int choiceIndex = Integer.parseInt(choice);
-
-            // Parser les points depuis l'histoire actuelle
-            if (currentStory != null) {
-                try {
-                    var jsonNode = objectMapper.readTree(currentStory);
-                    var pointsArray = jsonNode.path("points");
-                    if (pointsArray.isArray() && choiceIndex >= 0 && choiceIndex < pointsArray.size()) {
-                        return pointsArray.get(choiceIndex).asInt(15); // défaut 15 points
-                    }
-                } catch (Exception e) {
-                    log.warn("Could not parse points from current story JSON");
-                }
+            if (choiceIndex >= 0 && choiceIndex < choices.size()) {
+                return choices.get(choiceIndex);
             }
-
-            // Si on ne peut pas extraire les points, retourner une valeur par défaut
-            return 15;
-
+            return new ChapterChoice("Choix " + (choiceIndex + 1), 15);
         } catch (NumberFormatException e) {
-            // Si ce n'est pas un nombre, retourner une valeur par défaut
-            return 15;
+            return choices.stream()
+                    .filter(chapterChoice -> chapterChoice.getText().equals(choice))
+                    .findFirst()
+                    .orElseGet(() -> new ChapterChoice(choice, 15));
         }
     }
 
@@ -0,0 +1,143 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sn.codiallo.ecoBuddy.repository.NarrativeSessionRepository;
+import sn.codiallo.ecoBuddy.repository.NarrativeStepRepository;
+import sn.codiallo.ecoBuddy.repository.StoryHistoryRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Clôture des sessions narratives abandonnées en cours d'histoire.
+ * Par lots bornés, chacun dans sa propre transaction courte : une ligne d'historique
+ * ABANDONED par session (INSERT ... SELECT), suppression des étapes et choix, puis
+ * désactivation et allègement de la session (UPDATE ensembliste), limités aux sessions
+ * verrouillées et toujours inactives depuis le seuil. Les sessions tenues par
+ * NarrativeSessionStore sont ignorées : leur état en base peut être en retard.
+ * Le même passage supprime les chapitres partagés (ChapterStore) que plus aucune
+ * session ni étape ne référence, passé un délai de grâce après leur création.
+ */
+@Service
+@Slf4j
+public class NarrativeSessionReaper {
+
+    private final NarrativeSessionRepository narrativeSessionRepository;
+    private final NarrativeStepRepository narrativeStepRepository;
+    private final StoryHistoryRepository storyHistoryRepository;
+    private final NarrativeSessionStore narrativeSessionStore;
+    private final ChapterStore chapterStore;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${narrative.reaper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${narrative.reaper.idle-hours:24}")
+    private long idleHours;
+
+    @Value("${narrative.reaper.batch-size:200}")
+    private int batchSize;
+
+    @Value("${narrative.reaper.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${narrative.reaper.chapter-grace-hours:24}")
+    private long chapterGraceHours;
+
+    public NarrativeSessionReaper(NarrativeSessionRepository narrativeSessionRepository,
+                                  NarrativeStepRepository narrativeStepRepository,
+                                  StoryHistoryRepository storyHistoryRepository,
+                                  NarrativeSessionStore narrativeSessionStore,
+                                  ChapterStore chapterStore,
+                                  PlatformTransactionManager transactionManager) {
+        this.narrativeSessionRepository = narrativeSessionRepository;
+        this.narrativeStepRepository = narrativeStepRepository;
+        this.storyHistoryRepository = storyHistoryRepository;
+        this.narrativeSessionStore = narrativeSessionStore;
+        this.chapterStore = chapterStore;
+        this.transactionManager = transactionManager;
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.reaper.interval-ms:600000}",
+               initialDelayString = "${narrative.reaper.interval-ms:600000}")
+    public void reapAbandonedSessions() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(idleHours);
+        int reaped = 0;
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<Long> ids = narrativeSessionRepository.findIdleActiveIds(cutoff, PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                Set<Long> cached = narrativeSessionStore.cachedSessionIds();
+                List<Long> toReap = ids.stream().filter(id -> !cached.contains(id)).toList();
+                if (toReap.isEmpty()) {
+                    break; // le reste du lot est en mémoire, réessayé au prochain passage
+                }
+
+                reaped += reapBatch(toReap, cutoff);
+                if (ids.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to reap abandoned narrative sessions: ", e);
+        }
+
+        if (reaped > 0) {
+            log.info("Marked {} idle narrative sessions as abandoned", reaped);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.reaper.interval-ms:600000}",
+               initialDelayString = "${narrative.reaper.interval-ms:600000}")
+    public void deleteUnreferencedChapters() {
+        if (!enabled) {
+            return;
+        }
+
+        // Délai de grâce : un chapitre tout juste créé n'est peut-être pas encore référencé en base
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(chapterGraceHours);
+        Set<String> inUse = narrativeSessionStore.referencedChapterHashes();
+        String after = "";
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<String> examined = chapterStore.deleteUnreferenced(cutoff, after, inUse, batchSize);
+                if (examined.size() < batchSize) {
+                    break;
+                }
+                after = examined.get(examined.size() - 1);
+            }
+        } catch (Exception e) {
+            log.error("Failed to delete unreferenced chapters: ", e);
+        }
+    }
+
+    // Une session reprise depuis la sélection du lot n'est plus touchée : chaque instruction revérifie
+    // is_active et cutoff sur les lignes verrouillées, et les suppressions précèdent l'UPDATE qui change updated_at
+    private int reapBatch(List<Long> ids, LocalDateTime cutoff) {
+        Integer abandoned = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Long> idle = narrativeSessionRepository.lockIdleActiveIds(ids, cutoff);
+            if (idle.isEmpty()) {
+                return 0;
+            }
+            storyHistoryRepository.insertAbandonedForSessions(idle, cutoff);
+            narrativeStepRepository.deleteBySessionIds(idle, cutoff);
+            narrativeSessionRepository.deleteChoices(idle, cutoff);
+            return narrativeSessionRepository.abandon(idle, cutoff);
+        });
+        return abandoned != null ? abandoned : 0;
+    }
+}
@@ -0,0 +1,315 @@
+package sn.codiallo.ecoBuddy.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.User;
+import sn.codiallo.ecoBuddy.repository.NarrativeSessionRepository;
+import sn.codiallo.ecoBuddy.repository.UserRepository;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sessions narratives actives gardées en mémoire (par sessionId), avec écriture différée.
+ * Un choix modifie la session, ses étapes et les points gagnés en mémoire ; la base
+ * n'est écrite que toutes les flush-every-steps étapes, à la fin de l'histoire, à
+ * l'éviction (inactivité ou dépassement de max-sessions) et périodiquement pour les
+ * sessions modifiées. Un arrêt brutal peut perdre les dernières étapes non écrites.
+ * Une copie devenue périmée (version changée en base) est abandonnée à l'écriture.
+ */
+@Service
+@Slf4j
+public class NarrativeSessionStore {
+
+    private final NarrativeSessionRepository narrativeSessionRepository;
+    private final NarrativeHistoryService narrativeHistoryService;
+    private final UserRepository userRepository;
+    // Transactions propres au store : jamais jointes à celle de l'appelant, pour qu'une
+    // session marquée propre soit réellement écrite et qu'un échec reste local
+    private final TransactionTemplate newTransaction;
+
+    @Value("${narrative.session-store.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${narrative.session-store.idle-minutes:10}")
+    private long idleMinutes;
+
+    @Value("${narrative.session-store.flush-every-steps:3}")
+    private int flushEverySteps;
+
+    private final Map<String, ActiveSession> sessions = new ConcurrentHashMap<>();
+
+    public NarrativeSessionStore(NarrativeSessionRepository narrativeSessionRepository,
+                                 NarrativeHistoryService narrativeHistoryService,
+                                 UserRepository userRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.narrativeSessionRepository = narrativeSessionRepository;
+        this.narrativeHistoryService = narrativeHistoryService;
+        this.userRepository = userRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * État en mémoire d'une session ; à lire et modifier via withSession().
+     */
+    @Getter
+    public static final class ActiveSession {
+        private final NarrativeSession session;
+        private final Long userId;
+        private final String username;
+        private final NarrativeHistoryService.StepBuffer steps;
+        private int basePoints;
+        private int pendingPoints;
+        private int unflushedSteps;
+        private boolean dirty;
+        private boolean evicted;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private ActiveSession(NarrativeSession session, User user, NarrativeHistoryService.StepBuffer steps) {
+            this.session = session;
+            this.userId = user.getId();
+            this.username = user.getUsername();
+            this.basePoints = user.getPoints();
+            this.steps = steps;
+        }
+
+        /**
+         * Points de l'utilisateur au chargement plus ceux gagnés depuis, pas encore écrits.
+         */
+        public int getUserPoints() {
+            return basePoints + pendingPoints;
+        }
+
+        public void addPoints(int points) {
+            pendingPoints += points;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Enregistre une session qui vient d'être créée avec sa première étape ; à appeler
+     * une fois son insertion validée (commit).
+     */
+    public ActiveSession register(NarrativeSession session, User user, NarrativeHistoryService.StepBuffer steps) {
+        ActiveSession active = new ActiveSession(session, user, steps);
+        active.dirty = steps.isDirty();
+        active.unflushedSteps = steps.isDirty() ? 1 : 0;
+        sessions.put(session.getSessionId(), active);
+        evictOverflow();
+        return active;
+    }
+
+    /**
+     * Exécute l'action sous le verrou de la session, chargée depuis la base si besoin.
+     */
+    public <T> T withSession(String sessionId, Function<ActiveSession, T> action) {
+        while (true) {
+            ActiveSession active = get(sessionId);
+            synchronized (active) {
+                if (active.evicted) {
+                    continue; // évincée entre-temps : recharger
+                }
+                active.lastAccess = System.currentTimeMillis();
+                return action.apply(active);
+            }
+        }
+    }
+
+    /**
+     * À appeler (sous verrou) après chaque étape ajoutée ; écrit toutes les flush-every-steps étapes.
+     */
+    public void stepRecorded(ActiveSession active) {
+        active.dirty = true;
+        if (++active.unflushedSteps >= flushEverySteps) {
+            flush(active);
+        }
+    }
+
+    /**
+     * Fin d'histoire (sous verrou) : écriture immédiate puis retrait de la mémoire.
+     */
+    public void complete(ActiveSession active) {
+        active.dirty = true;
+        flush(active);
+        if (!active.dirty) {
+            active.evicted = true;
+            sessions.remove(active.session.getSessionId(), active);
+        }
+    }
+
+    /**
+     * Désactive toutes les sessions actives d'un utilisateur, en mémoire puis en base.
+     * À appeler hors transaction : chaque écriture est validée séparément.
+     */
+    public void deactivateUserSessions(Long userId) {
+        sessions.values().stream()
+                .filter(active -> active.userId.equals(userId))
+                .forEach(active -> {
+                    synchronized (active) {
+                        if (!active.evicted) {
+                            active.session.setIsActive(false);
+                            complete(active);
+                        }
+                    }
+                });
+        narrativeSessionRepository.deactivateActiveSessions(userId);
+    }
+
+    /**
+     * Identifiants (base) des sessions tenues en mémoire, que le reaper doit ignorer.
+     */
+    public Set<Long> cachedSessionIds() {
+        return sessions.values().stream()
+                .map(active -> active.session.getId())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Hash des chapitres référencés par les sessions en mémoire, écrits ou non.
+     */
+    public Set<String> referencedChapterHashes() {
+        Set<String> hashes = new HashSet<>();
+        sessions.values().forEach(active -> {
+            synchronized (active) {
+                hashes.add(active.session.getCurrentChapterHash());
+                active.steps.recent().forEach(step -> hashes.add(step.getChapterHash()));
+            }
+        });
+        hashes.remove(null);
+        return hashes;
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.session-store.flush-interval-ms:30000}")
+    public void flushAndEvict() {
+        long idleCutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        sessions.values().forEach(active -> {
+            synchronized (active) {
+                if (active.evicted) {
+                    return;
+                }
+                if (active.lastAccess < idleCutoff) {
+                    evict(active);
+                } else if (active.dirty) {
+                    flush(active);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        sessions.values().forEach(active -> {
+            synchronized (active) {
+                flush(active);
+            }
+        });
+    }
+
+    private ActiveSession get(String sessionId) {
+        ActiveSession active = sessions.get(sessionId);
+        if (active != null) {
+            return active;
+        }
+
+        ActiveSession loaded = newTransaction.execute(status -> {
+            NarrativeSession session = narrativeSessionRepository.findWithUserBySessionId(sessionId)
+                    .orElseThrow(() -> new RuntimeException("Session not found"));
+            return new ActiveSession(session, session.getUser(), narrativeHistoryService.load(session));
+        });
+
+        ActiveSession existing = sessions.putIfAbsent(sessionId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        evictOverflow();
+        return loaded;
+    }
+
+    // Sous verrou : en cas d'échec, l'état reste sale et sera réécrit au prochain flush
+    private void flush(ActiveSession active) {
+        if (!active.dirty) {
+            return;
+        }
+        try {
+            NarrativeSession saved = newTransaction.execute(status -> {
+                NarrativeSession merged = narrativeSessionRepository.save(active.session);
+                narrativeHistoryService.flush(active.steps);
+                if (active.pendingPoints != 0) {
+                    userRepository.addPoints(active.userId, active.pendingPoints);
+                }
+                return merged;
+            });
+            if (saved != null) {
+                active.session.setVersion(saved.getVersion());
+            }
+            active.basePoints += active.pendingPoints;
+            active.pendingPoints = 0;
+            active.unflushedSteps = 0;
+            active.dirty = false;
+        } catch (OptimisticLockingFailureException e) {
+            discardStale(active);
+        } catch (RuntimeException e) {
+            log.error("Failed to flush narrative session {}: ", active.session.getSessionId(), e);
+        }
+    }
+
+    // Session modifiée en base depuis son chargement (clôturée par le reaper, désactivée) :
+    // la copie en mémoire ne doit pas la ressusciter. Seuls les points gagnés sont conservés.
+    private void discardStale(ActiveSession active) {
+        log.warn("Narrative session {} changed in database, dropping in-memory copy", active.session.getSessionId());
+        if (active.pendingPoints != 0) {
+            try {
+                userRepository.addPoints(active.userId, active.pendingPoints);
+            } catch (RuntimeException e) {
+                log.error("Failed to save pending points of narrative session {}: ", active.session.getSessionId(), e);
+            }
+        }
+        active.pendingPoints = 0;
+        active.dirty = false;
+        active.evicted = true;
+        sessions.remove(active.session.getSessionId(), active);
+    }
+
+    private void evict(ActiveSession active) {
+        flush(active);
+        if (active.dirty) {
+            return; // écriture impossible : garder en mémoire plutôt que perdre l'état
+        }
+        active.evicted = true;
+        sessions.remove(active.session.getSessionId(), active);
+    }
+
+    private void evictOverflow() {
+        while (sessions.size() > maxSessions) {
+            ActiveSession oldest = sessions.values().stream()
+                    .min(Comparator.comparingLong(ActiveSession::getLastAccess))
+                    .orElse(null);
+            if (oldest == null) {
+                return;
+            }
+            synchronized (oldest) {
+                if (!oldest.evicted) {
+                    evict(oldest);
+                }
+                if (!oldest.evicted) {
+                    return;
+                }
+            }
+        }
+    }
+}
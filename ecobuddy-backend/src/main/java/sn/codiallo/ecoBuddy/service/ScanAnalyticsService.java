@@ -0,0 +1,155 @@
+package sn.codiallo.ecoBuddy.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import sn.codiallo.ecoBuddy.dto.ScanStatsResponse;
+import sn.codiallo.ecoBuddy.repository.ScanRollupRepository;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrégation des scans par (objet, jour, région).
+ * Les compteurs sont incrémentés en mémoire sur le chemin du scan puis
+ * vidés périodiquement dans la table scan_rollups. Les statistiques
+ * sont calculées uniquement à partir de ces agrégats.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanAnalyticsService {
+
+    private static final String UNKNOWN_REGION = "unknown";
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final int MAX_TOP_LIMIT = 100;
+    private static final int MAX_RANGE_DAYS = 366;
+
+    private final ScanRollupRepository scanRollupRepository;
+
+    @Value("${scanner.stats.default-range-days:30}")
+    private int defaultRangeDays;
+
+    private final Map<RollupKey, LongAdder> pendingCounts = new ConcurrentHashMap<>();
+
+    private record RollupKey(String objectName, LocalDate scanDay, String region) {}
+
+    public void recordScan(String objectName, String region) {
+        if (objectName == null || objectName.isBlank()) {
+            return;
+        }
+        RollupKey key = new RollupKey(normalize(objectName), LocalDate.now(), normalizeRegion(region));
+        pendingCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    @Scheduled(fixedDelayString = "${scanner.stats.flush-interval-ms:60000}")
+    public void flush() {
+        if (pendingCounts.isEmpty()) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        int flushed = 0;
+        for (Map.Entry<RollupKey, LongAdder> entry : pendingCounts.entrySet()) {
+            RollupKey key = entry.getKey();
+            long delta = entry.getValue().sumThenReset();
+
+            // Les compteurs du jour restent en place (pas de perte d'incréments concurrents),
+            // ceux des jours passés ne recevront plus de scans et peuvent être retirés
+            if (key.scanDay().isBefore(today)) {
+                pendingCounts.remove(key);
+            }
+            if (delta == 0) {
+                continue;
+            }
+
+            try {
+                scanRollupRepository.upsertCount(key.objectName(), key.scanDay(), key.region(), delta);
+                flushed++;
+            } catch (Exception e) {
+                log.warn("Failed to flush scan rollup {}, keeping {} pending scans", key, delta, e);
+                pendingCounts.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+            }
+        }
+
+        log.debug("Flushed {} scan rollup counters", flushed);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public ScanStatsResponse getTopObjects(int limit, LocalDate from, LocalDate to, String region) {
+        LocalDate[] range = resolveRange(from, to);
+        String regionFilter = region != null && !region.isBlank() ? normalizeRegion(region) : null;
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_TOP_LIMIT));
+
+        List<ScanStatsResponse.ObjectCount> topObjects = scanRollupRepository
+                .findTopObjects(range[0], range[1], regionFilter, PageRequest.of(0, boundedLimit))
+                .stream()
+                .map(row -> new ScanStatsResponse.ObjectCount((String) row[0], ((Number) row[1]).longValue()))
+                .toList();
+
+        return new ScanStatsResponse(range[0], range[1], regionFilter, null, null, topObjects, null);
+    }
+
+    public ScanStatsResponse getTimeSeries(String objectName, String granularity, LocalDate from,
+                                           LocalDate to, String region) {
+        LocalDate[] range = resolveRange(from, to);
+        String objectFilter = objectName != null && !objectName.isBlank() ? normalize(objectName) : null;
+        String regionFilter = region != null && !region.isBlank() ? normalizeRegion(region) : null;
+        boolean weekly = "week".equalsIgnoreCase(granularity);
+
+        List<Object[]> dailyRows = scanRollupRepository.findDailySeries(range[0], range[1], objectFilter, regionFilter);
+
+        // Regroupement hebdomadaire à partir des agrégats journaliers (semaine ISO, début lundi)
+        Map<LocalDate, Long> buckets = new TreeMap<>();
+        for (Object[] row : dailyRows) {
+            LocalDate day = (LocalDate) row[0];
+            LocalDate period = weekly ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : day;
+            buckets.merge(period, ((Number) row[1]).longValue(), Long::sum);
+        }
+
+        List<ScanStatsResponse.SeriesPoint> series = new ArrayList<>(buckets.size());
+        buckets.forEach((period, count) -> series.add(new ScanStatsResponse.SeriesPoint(period, count)));
+
+        return new ScanStatsResponse(range[0], range[1], regionFilter, objectFilter,
+                weekly ? "week" : "day", null, series);
+    }
+
+    private LocalDate[] resolveRange(LocalDate from, LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(defaultRangeDays - 1L);
+        if (start.isAfter(end)) {
+            throw new RuntimeException("'from' must be before 'to'");
+        }
+        if (start.plusDays(MAX_RANGE_DAYS).isBefore(end)) {
+            throw new RuntimeException("Date range cannot exceed " + MAX_RANGE_DAYS + " days");
+        }
+        return new LocalDate[]{start, end};
+    }
+
+    private String normalize(String objectName) {
+        String key = objectName.trim().toLowerCase();
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    private String normalizeRegion(String region) {
+        if (region == null || region.isBlank()) {
+            return UNKNOWN_REGION;
+        }
+        return normalize(region);
+    }
+}
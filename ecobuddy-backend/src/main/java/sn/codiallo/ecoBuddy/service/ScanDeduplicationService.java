@@ -0,0 +1,185 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Fenêtre glissante de déduplication des scans par (utilisateur, libellé).
+ * La fenêtre est découpée en tranches de temps ; chaque tranche associe un hash
+ * 64 bits de la clé à la réponse du premier scan (en cours ou terminé). Ce premier
+ * scan réserve la clé avant tout travail (points, Gemini) ; un rescan dans la fenêtre,
+ * même concurrent, attend cette réponse et la reçoit sans points ni écriture en base.
+ */
+@Service
+@Slf4j
+public class ScanDeduplicationService {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int LOCK_STRIPES = 64;
+
+    private final boolean enabled;
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final int maxEntriesPerBucket;
+    private final long waitTimeoutMs;
+    private final Bucket[] ring;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private static final class Bucket {
+        volatile long epoch = -1;
+        final Map<Long, CompletableFuture<Object>> entries = new ConcurrentHashMap<>();
+    }
+
+    public ScanDeduplicationService(
+            @Value("${scanner.dedupe.enabled:true}") boolean enabled,
+            @Value("${scanner.dedupe.window-seconds:30}") int windowSeconds,
+            @Value("${scanner.dedupe.buckets:6}") int buckets,
+            @Value("${scanner.dedupe.max-entries-per-bucket:50000}") int maxEntriesPerBucket,
+            @Value("${scanner.dedupe.wait-timeout-ms:10000}") long waitTimeoutMs) {
+        this.enabled = enabled && windowSeconds > 0;
+        this.bucketCount = Math.max(1, buckets);
+        this.bucketMillis = Math.max(1L, windowSeconds * 1000L / this.bucketCount);
+        this.maxEntriesPerBucket = maxEntriesPerBucket;
+        this.waitTimeoutMs = waitTimeoutMs;
+        // Une tranche de plus que la fenêtre : celle qui est recyclée est toujours hors fenêtre
+        this.ring = new Bucket[this.bucketCount + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Bucket();
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Exécute scan une seule fois par (utilisateur, libellé) dans la fenêtre. Les appels
+     * suivants, concurrents ou non, reçoivent asDuplicate(réponse du premier). Si le
+     * premier scan échoue, la clé est libérée et ses appels en attente échouent aussi.
+     */
+    public <T> T deduplicate(String username, String label, Class<T> responseType,
+                             Supplier<T> scan, UnaryOperator<T> asDuplicate) {
+        if (!enabled || username == null || label == null) {
+            return scan.get();
+        }
+        long key = hash(username, label, responseType);
+        CompletableFuture<Object> reservation = new CompletableFuture<>();
+        CompletableFuture<Object> existing;
+        boolean reserved;
+
+        // Recherche et réservation atomiques pour une même clé
+        synchronized (locks[(int) Math.floorMod(key, (long) LOCK_STRIPES)]) {
+            existing = find(key);
+            reserved = existing == null && reserve(key, reservation);
+        }
+
+        if (existing != null) {
+            log.debug("Duplicate scan of '{}' by {} within dedupe window", label, username);
+            return asDuplicate.apply(responseType.cast(await(existing)));
+        }
+        if (!reserved) {
+            return scan.get(); // tranche pleine : pas de déduplication
+        }
+
+        try {
+            T response = scan.get();
+            reservation.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            forget(key, reservation);
+            reservation.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Object> find(long key) {
+        long currentEpoch = System.currentTimeMillis() / bucketMillis;
+        for (long epoch = currentEpoch; epoch > currentEpoch - bucketCount; epoch--) {
+            Bucket bucket = ring[(int) (epoch % ring.length)];
+            if (bucket.epoch != epoch) {
+                continue;
+            }
+            CompletableFuture<Object> entry = bucket.entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean reserve(long key, CompletableFuture<Object> reservation) {
+        Bucket bucket = currentBucket();
+        if (bucket.entries.size() >= maxEntriesPerBucket) {
+            return false;
+        }
+        bucket.entries.put(key, reservation);
+        return true;
+    }
+
+    private void forget(long key, CompletableFuture<Object> reservation) {
+        for (Bucket bucket : ring) {
+            bucket.entries.remove(key, reservation);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> entry) {
+        try {
+            return entry.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Scan failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Same scan still in progress, please retry");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Scan interrupted");
+        }
+    }
+
+    private Bucket currentBucket() {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        Bucket bucket = ring[(int) (epoch % ring.length)];
+        if (bucket.epoch != epoch) {
+            synchronized (bucket) {
+                if (bucket.epoch != epoch) {
+                    bucket.entries.clear();
+                    bucket.epoch = epoch;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    // FNV-1a 64 bits sur (utilisateur, libellé normalisé, type de réponse)
+    private long hash(String username, String label, Class<?> responseType) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, username);
+        hash = mix(hash, label.trim().toLowerCase());
+        hash = mix(hash, responseType.getSimpleName());
+        return hash;
+    }
+
+    private long mix(long hash, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        // Séparateur : l'octet 0xff n'apparaît jamais en UTF-8
+        hash ^= 0xff;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
@@ -0,0 +1,241 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
+import sn.codiallo.ecoBuddy.dto.ScanAnalysisResponse;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enrichissement Gemini des scans, hors du chemin de requête.
+ * Le scan répond immédiatement avec un analysisId ; l'analyse est calculée par un
+ * pool dédié puis récupérée par polling (GET /scanner/analysis/{id}) ou poussée
+ * en SSE (GET /scanner/analysis/{id}/stream). Les résultats expirent après un TTL.
+ */
+@Service
+@Slf4j
+public class ScanEnrichmentService {
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+
+    private final GeminiService geminiService;
+    private final ThreadPoolTaskExecutor scanEnrichmentExecutor;
+
+    @Value("${scanner.enrichment.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scanner.enrichment.ttl-minutes:10}")
+    private long ttlMinutes;
+
+    @Value("${scanner.enrichment.sse-timeout-ms:30000}")
+    private long sseTimeoutMs;
+
+    private final Map<String, AnalysisEntry> analyses = new ConcurrentHashMap<>();
+
+    public ScanEnrichmentService(GeminiService geminiService,
+                                 @Qualifier("scanEnrichmentExecutor") ThreadPoolTaskExecutor scanEnrichmentExecutor) {
+        this.geminiService = geminiService;
+        this.scanEnrichmentExecutor = scanEnrichmentExecutor;
+    }
+
+    private static final class AnalysisEntry {
+        final String id;
+        final String username;
+        final String objectLabel;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        ScanAnalysisResponse result;
+        final List<SseEmitter> emitters = new ArrayList<>();
+
+        AnalysisEntry(String id, String username, String objectLabel) {
+            this.id = id;
+            this.username = username;
+            this.objectLabel = objectLabel;
+        }
+
+        synchronized ScanAnalysisResponse snapshot() {
+            if (result != null) {
+                return result;
+            }
+            return new ScanAnalysisResponse(id, STATUS_PENDING, objectLabel, null, null, null, createdAt, null);
+        }
+    }
+
+    /**
+     * Planifie l'analyse Gemini d'un objet scanné et retourne son identifiant,
+     * ou null si l'enrichissement est désactivé.
+     */
+    public String submit(String username, String objectLabel, Double confidence) {
+        if (!enabled || objectLabel == null) {
+            return null;
+        }
+
+        String analysisId = UUID.randomUUID().toString();
+        AnalysisEntry entry = new AnalysisEntry(analysisId, username, objectLabel);
+        analyses.put(analysisId, entry);
+
+        try {
+            scanEnrichmentExecutor.execute(() -> runAnalysis(entry, confidence));
+        } catch (TaskRejectedException e) {
+            // File pleine : répondre tout de suite avec l'analyse par défaut
+            log.warn("Scan enrichment queue full, using default analysis for {}", objectLabel);
+            complete(entry, STATUS_FAILED, getDefaultAnalysis(objectLabel));
+        }
+
+        return analysisId;
+    }
+
+    public ScanAnalysisResponse getAnalysis(String analysisId, String username) {
+        return findEntry(analysisId, username).snapshot();
+    }
+
+    public SseEmitter subscribe(String analysisId, String username) {
+        AnalysisEntry entry = findEntry(analysisId, username);
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+
+        ScanAnalysisResponse done;
+        synchronized (entry) {
+            done = entry.result;
+            if (done == null) {
+                entry.emitters.add(emitter);
+                emitter.onCompletion(() -> removeEmitter(entry, emitter));
+                emitter.onTimeout(() -> removeEmitter(entry, emitter));
+            }
+        }
+
+        if (done != null) {
+            sendAndComplete(emitter, done);
+        } else {
+            try {
+                emitter.send(SseEmitter.event().name("analysis").data(entry.snapshot()));
+            } catch (IOException e) {
+                removeEmitter(entry, emitter);
+            }
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${scanner.enrichment.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(ttlMinutes);
+        analyses.values().removeIf(entry -> entry.createdAt.isBefore(cutoff));
+    }
+
+    // Sans blocage du thread du pool : la durée de l'appel est bornée par l'attente maximale
+    // de l'ordonnanceur et l'échéance de la cascade de modèles (gemini.routing.cascade-budget-ms)
+    private void runAnalysis(AnalysisEntry entry, Double confidence) {
+        String prompt = buildGeminiPrompt(entry.objectLabel, confidence);
+        geminiService.generateScanAnalysisAsync(prompt)
+                .switchIfEmpty(Mono.fromRunnable(() ->
+                        complete(entry, STATUS_FAILED, getDefaultAnalysis(entry.objectLabel))))
+                .subscribe(
+                        analysis -> complete(entry, STATUS_COMPLETED, analysis),
+                        e -> {
+                            log.warn("Failed to generate Gemini analysis: ", e);
+                            complete(entry, STATUS_FAILED, getDefaultAnalysis(entry.objectLabel));
+                        });
+    }
+
+    private void complete(AnalysisEntry entry, String status, String analysis) {
+        ScanAnalysisResponse result = new ScanAnalysisResponse(
+                entry.id,
+                status,
+                entry.objectLabel,
+                analysis,
+                extractEnvironmentalInfo(analysis),
+                extractEcoTips(analysis),
+                entry.createdAt,
+                LocalDateTime.now()
+        );
+
+        List<SseEmitter> waiting;
+        synchronized (entry) {
+            entry.result = result;
+            waiting = new ArrayList<>(entry.emitters);
+            entry.emitters.clear();
+        }
+        waiting.forEach(emitter -> sendAndComplete(emitter, result));
+    }
+
+    private void sendAndComplete(SseEmitter emitter, ScanAnalysisResponse result) {
+        try {
+            emitter.send(SseEmitter.event().name("analysis").data(result));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void removeEmitter(AnalysisEntry entry, SseEmitter emitter) {
+        synchronized (entry) {
+            entry.emitters.remove(emitter);
+        }
+    }
+
+    private AnalysisEntry findEntry(String analysisId, String username) {
+        AnalysisEntry entry = analyses.get(analysisId);
+        if (entry == null || !entry.username.equals(username)) {
+            throw new RuntimeException("Analysis not found");
+        }
+        return entry;
+    }
+
+    private String buildGeminiPrompt(String objectLabel, Double confidence) {
+        return String.format(
+            "Analyse cet objet détecté par IA : %s (confiance: %.2f). " +
+            "Fournis un résumé écologique incluant : " +
+            "1) Impact environnemental détaillé " +
+            "2) Conseils de recyclage spécifiques " +
+            "3) Alternatives durables " +
+            "4) Un fait intéressant. " +
+            "Réponds en français, sois informatif et encourageant.",
+            objectLabel, confidence != null ? confidence : 0.0
+        );
+    }
+
+    public String getDefaultAnalysis(String objectLabel) {
+        return String.format(
+            "L'objet '%s' a été détecté par intelligence artificielle. " +
+            "Pour une analyse complète de son impact environnemental, " +
+            "consultez les suggestions de recyclage et les alternatives proposées.",
+            objectLabel
+        );
+    }
+
+    public String extractEnvironmentalInfo(String geminiAnalysis) {
+        // Extraction simple - dans un cas réel, on pourrait parser plus finement
+        if (geminiAnalysis != null && geminiAnalysis.length() > 50) {
+            int endIndex = geminiAnalysis.indexOf('.', 50);
+            return geminiAnalysis.substring(0, endIndex > 0 ? endIndex + 1 : Math.min(100, geminiAnalysis.length()));
+        }
+        return "Impact environnemental variable selon l'usage et le traitement.";
+    }
+
+    public List<String> extractEcoTips(String geminiAnalysis) {
+        // Extraction basique - peut être améliorée avec NLP
+        List<String> tips = new ArrayList<>();
+
+        if (geminiAnalysis != null && geminiAnalysis.contains("conseil")) {
+            tips.add("Suivez les conseils de l'analyse Gemini");
+        }
+
+        tips.add("Réduisez votre consommation");
+        tips.add("Privilégiez les produits durables");
+
+        return tips;
+    }
+}
@@ -0,0 +1,84 @@
+package sn.codiallo.ecoBuddy.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Heuristiques basées sur le libellé d'un objet scanné.
+ * Partagées entre le chemin de scan et la précompilation des modèles du catalogue.
+ */
+final class ScanHeuristics {
+
+    private ScanHeuristics() {
+    }
+
+    static String determineObjectType(String objectLabel) {
+        String lowerLabel = objectLabel.toLowerCase();
+        if (lowerLabel.contains("plastic") || lowerLabel.contains("bottle") || lowerLabel.contains("bag")) {
+            return "plastic";
+        } else if (lowerLabel.contains("glass")) {
+            return "glass";
+        } else if (lowerLabel.contains("can") || lowerLabel.contains("metal") || lowerLabel.contains("aluminum")) {
+            return "metal";
+        } else if (lowerLabel.contains("paper") || lowerLabel.contains("cardboard")) {
+            return "paper";
+        } else if (lowerLabel.contains("electronic") || lowerLabel.contains("phone") || lowerLabel.contains("battery")) {
+            return "electronic";
+        } else if (lowerLabel.contains("textile") || lowerLabel.contains("fabric") || lowerLabel.contains("cloth")) {
+            return "textile";
+        }
+        return "unknown";
+    }
+
+    static String generateFunFact(String objectLabel) {
+        String lowerLabel = objectLabel.toLowerCase();
+        if (lowerLabel.contains("bottle")) {
+            return "1 million de bouteilles plastique sont achetées chaque minute dans le monde !";
+        } else if (lowerLabel.contains("can")) {
+            return "Recycler une canette économise 95% de l'énergie nécessaire pour la fabriquer.";
+        } else if (lowerLabel.contains("bag")) {
+            return "8 millions de tonnes de plastique finissent dans les océans chaque année.";
+        } else if (lowerLabel.contains("glass")) {
+            return "Glass can be recycled infinitely without losing its quality!";
+        } else if (lowerLabel.contains("paper")) {
+            return "Il faut environ 17 arbres pour produire 1 tonne de papier.";
+        }
+        return "Chaque geste compte pour préserver notre planète !";
+    }
+
+    static List<String> getDefaultAlternatives(String objectLabel) {
+        String lower = objectLabel.toLowerCase();
+
+        if (lower.contains("bottle")) {
+            return Arrays.asList(
+                "Gourde réutilisable",
+                "Fontaine à eau",
+                "Bouteilles consignées"
+            );
+        } else if (lower.contains("bag")) {
+            return Arrays.asList(
+                "Sacs réutilisables en toile",
+                "Cabas en matières naturelles",
+                "Paniers en osier"
+            );
+        }
+
+        return Arrays.asList("Cherchez des alternatives durables et réutilisables");
+    }
+
+    // Mapping de synonymes vers noms standardisés du catalogue
+    static String toStandardName(String objectName) {
+        String lowerName = objectName.toLowerCase();
+        return switch (lowerName) {
+            case "plastic bottle", "water bottle", "drink bottle" -> "bottle";
+            case "aluminum can", "soda can", "drink can" -> "can";
+            case "plastic bag", "shopping bag", "grocery bag" -> "bag";
+            case "coffee cup", "disposable cup", "paper cup" -> "cup";
+            case "cardboard box", "package", "shipping box" -> "box";
+            case "smartphone", "mobile phone", "cell phone" -> "phone";
+            case "batteries", "battery pack" -> "battery";
+            case "light bulb", "led bulb", "incandescent bulb" -> "bulb";
+            default -> lowerName;
+        };
+    }
+}
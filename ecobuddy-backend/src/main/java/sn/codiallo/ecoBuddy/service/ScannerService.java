@@ -3,7 +3,6 @@ package sn.codiallo.ecoBuddy.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import sn.codiallo.ecoBuddy.dto.ObjectRecognitionResult;
 import sn.codiallo.ecoBuddy.dto.ScanResponse;
 import sn.codiallo.ecoBuddy.dto.ObjectScanRequest;
@@ -12,11 +11,11 @@ import sn.codiallo.ecoBuddy.model.EcoObject;
 import sn.codiallo.ecoBuddy.model.User;
 import sn.codiallo.ecoBuddy.repository.EcoObjectRepository;
 import sn.codiallo.ecoBuddy.repository.UserRepository;
+import sn.codiallo.ecoBuddy.service.EcoCatalogService.ScanTemplate;
 
 import java.util.List;
 import java.util.Optional;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 @Service
@@ -27,82 +26,49 @@ public class ScannerService {
     private final ObjectRecognitionService objectRecognitionService;
     private final EcoObjectRepository ecoObjectRepository;
     private final UserRepository userRepository;
-    private final GeminiService geminiService;
+    private final ScanAnalyticsService scanAnalyticsService;
+    private final EcoCatalogService ecoCatalogService;
+    private final ScanDeduplicationService scanDeduplicationService;
+    private final ScanEnrichmentService scanEnrichmentService;
 
     private static final int SCAN_POINTS_REWARD = 5; // Points gagnés pour chaque scan
 
-    @Transactional
     public ScanResponse scanObject(String objectName, String username) {
         log.info("Scanning object: {} for user: {}", objectName, username);
 
+        // Rescan dans la fenêtre de déduplication : réponse du premier scan, sans points ni écriture
+        return scanDeduplicationService.deduplicate(username, objectName, ScanResponse.class,
+                () -> doScanObject(objectName, username), this::withoutReward);
+    }
+
+    private ScanResponse doScanObject(String objectName, String username) {
         // Reconnaissance d'objet (mock pour l'instant)
         ObjectRecognitionResult recognitionResult = objectRecognitionService.recognizeObject(objectName);
         
-        // Rechercher les informations écologiques de l'objet
-        Optional<EcoObject> ecoObjectOpt = findEcoObjectInfo(recognitionResult.getObjectName());
+        // Rechercher le modèle précalculé de l'objet dans le catalogue
+        Optional<ScanTemplate> templateOpt = ecoCatalogService.findTemplate(recognitionResult.getObjectName());
         
-        if (ecoObjectOpt.isPresent()) {
-            EcoObject ecoObject = ecoObjectOpt.get();
+        ScanResponse response;
+        if (templateOpt.isPresent()) {
+            ScanTemplate template = templateOpt.get();
             
             // Récompenser l'utilisateur pour le scan
-            rewardUserForScan(username);
+            rewardUserForScan(username, template.name());
             
-            ScanResponse response = new ScanResponse();
-            response.setName(ecoObject.getName());
-            response.setCarbonImpact(ecoObject.getCarbonImpact());
-            response.setRecyclable(ecoObject.getRecyclable());
-            response.setAlternative(ecoObject.getAlternative());
-            response.setDescription(ecoObject.getDescription());
-            response.setEcoTips(ecoObject.getEcoTips());
-            response.setPointsEarned(SCAN_POINTS_REWARD);
-            return response;
+            response = template.toScanResponse(SCAN_POINTS_REWARD);
         } else {
             // Objet non trouvé dans la base, retourner des valeurs par défaut
             log.warn("Object not found in database: {}", recognitionResult.getObjectName());
             
-            return createDefaultResponse(recognitionResult.getObjectName(), username);
-        }
-    }
-
-    private Optional<EcoObject> findEcoObjectInfo(String objectName) {
-        // Recherche exacte d'abord
-        Optional<EcoObject> exact = ecoObjectRepository.findByNameIgnoreCaseAndIsActiveTrue(objectName);
-        if (exact.isPresent()) {
-            return exact;
+            response = createDefaultResponse(recognitionResult.getObjectName(), username);
         }
 
-        // Recherche par mots-clés si pas de correspondance exacte
-        List<EcoObject> similar = ecoObjectRepository.findByNameContainingIgnoreCaseAndIsActiveTrue(objectName);
-        if (!similar.isEmpty()) {
-            return Optional.of(similar.get(0)); // Retourner le premier résultat
-        }
-
-        // Recherche par synonymes courants
-        return findBySynonym(objectName);
-    }
-
-    private Optional<EcoObject> findBySynonym(String objectName) {
-        String lowerName = objectName.toLowerCase();
-        
-        // Mapping de synonymes vers noms standardisés
-        String standardName = switch (lowerName) {
-            case "plastic bottle", "water bottle", "drink bottle" -> "bottle";
-            case "aluminum can", "soda can", "drink can" -> "can";
-            case "plastic bag", "shopping bag", "grocery bag" -> "bag";
-            case "coffee cup", "disposable cup", "paper cup" -> "cup";
-            case "cardboard box", "package", "shipping box" -> "box";
-            case "smartphone", "mobile phone", "cell phone" -> "phone";
-            case "batteries", "battery pack" -> "battery";
-            case "light bulb", "led bulb", "incandescent bulb" -> "bulb";
-            default -> lowerName;
-        };
-
-        return ecoObjectRepository.findByNameIgnoreCaseAndIsActiveTrue(standardName);
+        return response;
     }
 
     private ScanResponse createDefaultResponse(String objectName, String username) {
         // Récompenser quand même l'utilisateur pour le scan
-        rewardUserForScan(username);
+        rewardUserForScan(username, objectName);
         
         // Valeurs par défaut pour objets inconnus
         ScanResponse response = new ScanResponse();
@@ -116,13 +82,13 @@ public class ScannerService {
         return response;
     }
 
-    private void rewardUserForScan(String username) {
+    private void rewardUserForScan(String username, String objectName) {
         try {
             User user = userRepository.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            user.setPoints(user.getPoints() + SCAN_POINTS_REWARD);
-            userRepository.save(user);
+            userRepository.addPoints(user.getId(), SCAN_POINTS_REWARD);
+            scanAnalyticsService.recordScan(objectName, user.getRegion());
             
             log.info("Rewarded user {} with {} points for scanning", username, SCAN_POINTS_REWARD);
         } catch (Exception e) {
@@ -131,59 +97,61 @@ public class ScannerService {
         }
     }
 
-    public List<EcoObject> getAllEcoObjects() {
-        return ecoObjectRepository.findByIsActiveTrueOrderByNameAsc();
-    }
-
     public List<EcoObject> searchEcoObjects(String keyword) {
         return ecoObjectRepository.findByNameContainingIgnoreCaseAndIsActiveTrue(keyword);
     }
     
-    @Transactional
     public ScanResponse scanObjectForAR(String objectLabel, String username, ObjectScanRequest request) {
         log.info("Scanning AR object: {} for user: {}", objectLabel, username);
 
+        // Rescan dans la fenêtre de déduplication (typique en "real_time") : ni Gemini, ni points, ni écriture
+        return scanDeduplicationService.deduplicate(username, objectLabel, ScanResponse.class,
+                () -> doScanObjectForAR(objectLabel, username, request), this::withoutReward);
+    }
+
+    private ScanResponse doScanObjectForAR(String objectLabel, String username, ObjectScanRequest request) {
+        ScanResponse response;
         try {
-            // Rechercher les informations écologiques de l'objet
-            Optional<EcoObject> ecoObjectOpt = findEcoObjectInfo(objectLabel);
+            // Rechercher le modèle précalculé (type, fait intéressant inclus) dans le catalogue
+            Optional<ScanTemplate> templateOpt = ecoCatalogService.findTemplate(objectLabel);
             
-            if (ecoObjectOpt.isPresent()) {
-                EcoObject ecoObject = ecoObjectOpt.get();
+            if (templateOpt.isPresent()) {
+                ScanTemplate template = templateOpt.get();
                 
                 // Récompenser l'utilisateur pour le scan
-                rewardUserForScan(username);
-                
-                // Déterminer le type d'objet pour les champs AR
-                String objectType = determineObjectType(objectLabel);
-                String funFact = generateFunFact(objectLabel, ecoObject);
+                rewardUserForScan(username, template.name());
                 
-                ScanResponse response = new ScanResponse();
-                response.setName(ecoObject.getName());
-                response.setCarbonImpact(ecoObject.getCarbonImpact());
-                response.setRecyclable(ecoObject.getRecyclable());
-                response.setAlternative(ecoObject.getAlternative());
-                response.setDescription(ecoObject.getDescription());
-                response.setEcoTips(ecoObject.getEcoTips());
-                response.setPointsEarned(SCAN_POINTS_REWARD);
-                response.setObjectType(objectType);
-                response.setFunFact(funFact);
-                return response;
+                response = template.toScanResponse(SCAN_POINTS_REWARD);
             } else {
                 // Objet non trouvé dans la base, créer une réponse basée sur le label ML Kit
-                return createARDefaultResponse(objectLabel, username);
+                response = createARDefaultResponse(objectLabel, username);
             }
         } catch (Exception e) {
             log.error("Error processing AR scan: ", e);
-            return createARDefaultResponse(objectLabel, username);
+            response = createARDefaultResponse(objectLabel, username);
         }
+
+        // Analyse Gemini en arrière-plan seulement si demandée (les scans temps réel n'en ont pas besoin),
+        // récupérable via /scanner/analysis/{id}
+        if (request != null && Boolean.TRUE.equals(request.getDetailedAnalysis())) {
+            response.setAnalysisId(scanEnrichmentService.submit(username, objectLabel, request.getConfidence()));
+        }
+
+        return response;
+    }
+
+    private ScanResponse withoutReward(ScanResponse cached) {
+        return new ScanResponse(cached.getName(), cached.getCarbonImpact(), cached.getRecyclable(),
+                cached.getAlternative(), cached.getDescription(), cached.getEcoTips(), 0,
+                cached.getObjectType(), cached.getFunFact(), cached.getAnalysisId());
     }
     
     private ScanResponse createARDefaultResponse(String objectLabel, String username) {
         // Récompenser quand même l'utilisateur pour le scan
-        rewardUserForScan(username);
+        rewardUserForScan(username, objectLabel);
         
-        String objectType = determineObjectType(objectLabel);
-        String funFact = generateFunFact(objectLabel, null);
+        String objectType = ScanHeuristics.determineObjectType(objectLabel);
+        String funFact = ScanHeuristics.generateFunFact(objectLabel);
         
         // Valeurs intelligentes basées sur le type d'objet
         Double carbonImpact = estimateCarbonImpact(objectLabel);
@@ -205,40 +173,6 @@ public class ScannerService {
         return response;
     }
     
-    private String determineObjectType(String objectLabel) {
-        String lowerLabel = objectLabel.toLowerCase();
-        if (lowerLabel.contains("plastic") || lowerLabel.contains("bottle") || lowerLabel.contains("bag")) {
-            return "plastic";
-        } else if (lowerLabel.contains("glass")) {
-            return "glass";
-        } else if (lowerLabel.contains("can") || lowerLabel.contains("metal") || lowerLabel.contains("aluminum")) {
-            return "metal";
-        } else if (lowerLabel.contains("paper") || lowerLabel.contains("cardboard")) {
-            return "paper";
-        } else if (lowerLabel.contains("electronic") || lowerLabel.contains("phone") || lowerLabel.contains("battery")) {
-            return "electronic";
-        } else if (lowerLabel.contains("textile") || lowerLabel.contains("fabric") || lowerLabel.contains("cloth")) {
-            return "textile";
-        }
-        return "unknown";
-    }
-    
-    private String generateFunFact(String objectLabel, EcoObject ecoObject) {
-        String lowerLabel = objectLabel.toLowerCase();
-        if (lowerLabel.contains("bottle")) {
-            return "1 million de bouteilles plastique sont achetées chaque minute dans le monde !";
-        } else if (lowerLabel.contains("can")) {
-            return "Recycler une canette économise 95% de l'énergie nécessaire pour la fabriquer.";
-        } else if (lowerLabel.contains("bag")) {
-            return "8 millions de tonnes de plastique finissent dans les océans chaque année.";
-        } else if (lowerLabel.contains("glass")) {
-            return "Glass can be recycled infinitely without losing its quality!";
-        } else if (lowerLabel.contains("paper")) {
-            return "Il faut environ 17 arbres pour produire 1 tonne de papier.";
-        }
-        return "Chaque geste compte pour préserver notre planète !";
-    }
-    
     private Double estimateCarbonImpact(String objectLabel) {
         String lowerLabel = objectLabel.toLowerCase();
         if (lowerLabel.contains("bottle")) return 2.5;
@@ -300,63 +234,51 @@ public class ScannerService {
         return objectLabel.substring(0, 1).toUpperCase() + objectLabel.substring(1);
     }
 
-    @Transactional
     public ObjectScanResponse scanObjectWithTensorFlow(ObjectScanRequest request, String username) {
         long startTime = System.currentTimeMillis();
         log.info("Scanning TensorFlow object: {} (confidence: {}) for user: {}", 
                 request.getObjectLabel(), request.getConfidence(), username);
 
         try {
-            // 1. Rechercher les informations de base dans la DB
-            Optional<EcoObject> ecoObjectOpt = findEcoObjectInfo(request.getObjectLabel());
-            
-            // 2. Générer une analyse Gemini enrichie
-            String geminiAnalysis = generateGeminiAnalysis(request);
-            
-            // 3. Calculer les métriques environnementales
-            EnvironmentalMetrics metrics = calculateEnvironmentalMetrics(request.getObjectLabel());
-            
-            // 4. Récompenser l'utilisateur
-            int pointsEarned = calculatePointsReward(request);
-            rewardUserForScan(username, pointsEarned);
-            
-            // 5. Construire la réponse
-            ObjectScanResponse response = buildScanResponse(
-                request, ecoObjectOpt, geminiAnalysis, metrics, pointsEarned, startTime
-            );
-            
-            log.info("Successfully processed scan for object: {} in {}ms", 
-                    request.getObjectLabel(), System.currentTimeMillis() - startTime);
-            
-            return response;
-            
+            // Rescan dans la fenêtre de déduplication : pas de nouvel appel Gemini ni de points
+            return scanDeduplicationService.deduplicate(username, request.getObjectLabel(), ObjectScanResponse.class,
+                    () -> doScanObjectWithTensorFlow(request, username, startTime),
+                    duplicate -> duplicate.toBuilder()
+                            .points(0)
+                            .processingTime((System.currentTimeMillis() - startTime) + "ms")
+                            .build());
         } catch (Exception e) {
             log.error("Error processing TensorFlow scan: ", e);
             return createErrorResponse(request, e, startTime);
         }
     }
 
-    private String generateGeminiAnalysis(ObjectScanRequest request) {
-        try {
-            String prompt = buildGeminiPrompt(request);
-            return geminiService.generateNarrative(prompt, List.of("Analyser l'impact écologique"));
-        } catch (Exception e) {
-            log.warn("Failed to generate Gemini analysis: ", e);
-            return getDefaultAnalysis(request.getObjectLabel());
-        }
-    }
-
-    private String buildGeminiPrompt(ObjectScanRequest request) {
-        return String.format(
-            "Analyse cet objet détecté par IA : %s (confiance: %.2f). " +
-            "Fournis un résumé écologique incluant : " +
-            "1) Impact environnemental détaillé " +
-            "2) Conseils de recyclage spécifiques " +
-            "3) Alternatives durables " +
-            "4) Un fait intéressant. " +
-            "Réponds en français, sois informatif et encourageant.",
-            request.getObjectLabel(), request.getConfidence()
+    private ObjectScanResponse doScanObjectWithTensorFlow(ObjectScanRequest request, String username, long startTime) {
+        // 1. Rechercher les informations de base dans la DB
+        Optional<ScanTemplate> templateOpt = ecoCatalogService.findTemplate(request.getObjectLabel());
+        
+        // 2. Planifier l'analyse Gemini en arrière-plan ; la réponse porte l'analyse par défaut
+        String analysisId = scanEnrichmentService.submit(
+                username, request.getObjectLabel(), request.getConfidence());
+        String geminiAnalysis = scanEnrichmentService.getDefaultAnalysis(request.getObjectLabel());
+        
+        // 3. Calculer les métriques environnementales
+        EnvironmentalMetrics metrics = calculateEnvironmentalMetrics(request.getObjectLabel());
+        
+        // 4. Récompenser l'utilisateur
+        int pointsEarned = calculatePointsReward(request);
+        String rollupName = templateOpt.map(ScanTemplate::name).orElse(request.getObjectLabel());
+        rewardUserForScan(username, rollupName, pointsEarned);
+        
+        // 5. Construire la réponse
+        ObjectScanResponse response = buildScanResponse(
+            request, templateOpt, geminiAnalysis, analysisId, metrics, pointsEarned, startTime
         );
+        
+        log.info("Successfully processed scan for object: {} in {}ms", 
+                request.getObjectLabel(), System.currentTimeMillis() - startTime);
+        
+        return response;
     }
 
     private EnvironmentalMetrics calculateEnvironmentalMetrics(String objectLabel) {
@@ -403,13 +325,13 @@ public class ScannerService {
         return Math.min(basePoints, 15); // Maximum 15 points par scan
     }
 
-    private void rewardUserForScan(String username, int points) {
+    private void rewardUserForScan(String username, String objectName, int points) {
         try {
             User user = userRepository.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            user.setPoints(user.getPoints() + points);
-            userRepository.save(user);
+            userRepository.addPoints(user.getId(), points);
+            scanAnalyticsService.recordScan(objectName, user.getRegion());
             
             log.info("Rewarded user {} with {} points for TensorFlow scan", username, points);
         } catch (Exception e) {
@@ -419,8 +341,9 @@ public class ScannerService {
 
     private ObjectScanResponse buildScanResponse(
             ObjectScanRequest request, 
-            Optional<EcoObject> ecoObjectOpt, 
+            Optional<ScanTemplate> templateOpt, 
             String geminiAnalysis,
+            String analysisId,
             EnvironmentalMetrics metrics,
             int pointsEarned,
             long startTime) {
@@ -428,13 +351,15 @@ public class ScannerService {
         return ObjectScanResponse.builder()
                 .id("scan_" + System.currentTimeMillis())
                 .objectName(formatObjectName(request.getObjectLabel()))
-                .objectType(determineObjectType(request.getObjectLabel()))
+                .objectType(templateOpt.map(ScanTemplate::objectType)
+                            .orElseGet(() -> ScanHeuristics.determineObjectType(request.getObjectLabel())))
                 .environmentalImpact(metrics.impactLevel)
-                .environmentalInfo(extractEnvironmentalInfo(geminiAnalysis))
-                .recyclingSuggestions(getRecyclingSuggestions(request.getObjectLabel(), ecoObjectOpt))
+                .environmentalInfo(scanEnrichmentService.extractEnvironmentalInfo(geminiAnalysis))
+                .recyclingSuggestions(getRecyclingSuggestions(request.getObjectLabel(), templateOpt))
                 .alternatives(request.getAlternatives() != null ? 
                             request.getAlternatives() : 
-                            getDefaultAlternatives(request.getObjectLabel()))
+                            templateOpt.map(ScanTemplate::alternatives)
+                                    .orElseGet(() -> ScanHeuristics.getDefaultAlternatives(request.getObjectLabel())))
                 .points(pointsEarned)
                 .scanDate(LocalDateTime.now())
                 .confidence(request.getConfidence())
@@ -443,8 +368,10 @@ public class ScannerService {
                 .biodegradabilityYears(metrics.biodegradabilityYears)
                 .impactDescription(buildImpactDescription(request.getObjectLabel(), metrics))
                 .geminiAnalysis(geminiAnalysis)
-                .ecoTips(extractEcoTips(geminiAnalysis, request.getObjectLabel()))
-                .funFact(generateFunFact(request.getObjectLabel(), ecoObjectOpt.orElse(null)))
+                .ecoTips(scanEnrichmentService.extractEcoTips(geminiAnalysis))
+                .funFact(templateOpt.map(ScanTemplate::funFact)
+                            .orElseGet(() -> ScanHeuristics.generateFunFact(request.getObjectLabel())))
+                .analysisId(analysisId)
                 .isSuccessful(true)
                 .processingTime((System.currentTimeMillis() - startTime) + "ms")
                 .build();
@@ -473,18 +400,9 @@ public class ScannerService {
 
     // Méthodes utilitaires - utiliser celles définies plus haut
 
-    private String extractEnvironmentalInfo(String geminiAnalysis) {
-        // Extraction simple - dans un cas réel, on pourrait parser plus finement
-        if (geminiAnalysis != null && geminiAnalysis.length() > 50) {
-            int endIndex = Math.min(geminiAnalysis.indexOf('.', 50), geminiAnalysis.length());
-            return geminiAnalysis.substring(0, endIndex > 0 ? endIndex + 1 : 100);
-        }
-        return "Impact environnemental variable selon l'usage et le traitement.";
-    }
-
-    private List<String> getRecyclingSuggestions(String objectLabel, Optional<EcoObject> ecoObjectOpt) {
-        if (ecoObjectOpt.isPresent() && ecoObjectOpt.get().getEcoTips() != null) {
-            return Arrays.asList(ecoObjectOpt.get().getEcoTips().split("\\|"));
+    private List<String> getRecyclingSuggestions(String objectLabel, Optional<ScanTemplate> templateOpt) {
+        if (templateOpt.isPresent() && templateOpt.get().ecoTips() != null) {
+            return templateOpt.get().recyclingSuggestions();
         }
         
         return getDefaultRecyclingSuggestions(objectLabel);
@@ -516,26 +434,6 @@ public class ScannerService {
         return Arrays.asList("Consultez les consignes de tri de votre commune");
     }
 
-    private List<String> getDefaultAlternatives(String objectLabel) {
-        String lower = objectLabel.toLowerCase();
-        
-        if (lower.contains("bottle")) {
-            return Arrays.asList(
-                "Gourde réutilisable",
-                "Fontaine à eau",
-                "Bouteilles consignées"
-            );
-        } else if (lower.contains("bag")) {
-            return Arrays.asList(
-                "Sacs réutilisables en toile",
-                "Cabas en matières naturelles",
-                "Paniers en osier"
-            );
-        }
-        
-        return Arrays.asList("Cherchez des alternatives durables et réutilisables");
-    }
-
     private String buildImpactDescription(String objectLabel, EnvironmentalMetrics metrics) {
         return String.format(
             "Cet objet génère environ %.1f kg de CO2, avec un taux de recyclage de %.0f%% et une durée de dégradation de %d ans.",
@@ -545,30 +443,6 @@ public class ScannerService {
         );
     }
 
-    private List<String> extractEcoTips(String geminiAnalysis, String objectLabel) {
-        // Extraction basique - peut être améliorée avec NLP
-        List<String> tips = new ArrayList<>();
-        
-        if (geminiAnalysis != null && geminiAnalysis.contains("conseil")) {
-            tips.add("Suivez les conseils de l'analyse Gemini");
-        }
-        
-        tips.add("Réduisez votre consommation");
-        tips.add("Privilégiez les produits durables");
-        
-        return tips;
-    }
-
-
-    private String getDefaultAnalysis(String objectLabel) {
-        return String.format(
-            "L'objet '%s' a été détecté par intelligence artificielle. " +
-            "Pour une analyse complète de son impact environnemental, " +
-            "consultez les suggestions de recyclage et les alternatives proposées.",
-            objectLabel
-        );
-    }
-
     // Classe interne pour les métriques environnementales
     private static class EnvironmentalMetrics {
         final double carbonFootprint;
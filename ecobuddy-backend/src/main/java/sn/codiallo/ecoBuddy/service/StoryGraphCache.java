@@ -0,0 +1,137 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Graphe d'histoires partagé (optionnel) : (hash du chapitre parent, index du choix)
+ * -> réponse Gemini du chapitre suivant. Les chemins populaires (ouvertures du pool
+ * suivies des mêmes choix) sont servis depuis la mémoire. Un chapitre connu n'est
+ * réutilisé qu'avec la probabilité reuse-probability pour que les histoires varient.
+ * Au-delà de max-entries, on examine les eviction-sample entrées les plus anciennes
+ * (file d'insertion) : la moins demandée est évincée, les autres repartent en fin de
+ * file. Une nouvelle entrée parcourt donc toute la file avant de pouvoir être évincée.
+ * Les compteurs sont divisés par deux à chaque decay-interval-ms pour que la
+ * popularité vieillisse.
+ */
+@Service
+@Slf4j
+public class StoryGraphCache {
+
+    @Value("${narrative.story-graph.enabled:false}")
+    private boolean enabled;
+
+    @Value("${narrative.story-graph.reuse-probability:0.7}")
+    private double reuseProbability;
+
+    @Value("${narrative.story-graph.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${narrative.story-graph.eviction-sample:5}")
+    private int evictionSample;
+
+    private final Map<String, Edge> edges = new ConcurrentHashMap<>();
+
+    // Clés dans l'ordre d'insertion ; les entrées épargnées à l'éviction sont remises en fin de file
+    private final Queue<String> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    private static final class Edge {
+        private final String responseText;
+        // L'enregistrement compte comme une première demande
+        private final AtomicInteger hits = new AtomicInteger(1);
+
+        private Edge(String responseText) {
+            this.responseText = responseText;
+        }
+    }
+
+    /**
+     * Réponse déjà générée pour ce choix, si elle existe et si le tirage autorise sa réutilisation.
+     */
+    public Optional<String> lookup(String parentChapterHash, int choiceIndex) {
+        if (!enabled || parentChapterHash == null || choiceIndex < 0) {
+            return Optional.empty();
+        }
+        Edge edge = edges.get(key(parentChapterHash, choiceIndex));
+        if (edge == null) {
+            return Optional.empty();
+        }
+
+        // Demande comptée même sans réutilisation : c'est la popularité du chemin
+        edge.hits.incrementAndGet();
+        if (ThreadLocalRandom.current().nextDouble() >= reuseProbability) {
+            return Optional.empty();
+        }
+        log.debug("Serving chapter from story graph ({}, choice {})", parentChapterHash, choiceIndex);
+        return Optional.of(edge.responseText);
+    }
+
+    /**
+     * Enregistre le chapitre généré pour ce choix ; la première version connue est conservée.
+     */
+    public void record(String parentChapterHash, int choiceIndex, String responseText) {
+        if (!enabled || parentChapterHash == null || choiceIndex < 0) {
+            return;
+        }
+        String key = key(parentChapterHash, choiceIndex);
+        if (edges.putIfAbsent(key, new Edge(responseText)) == null) {
+            evictionQueue.offer(key);
+            evictOverflow();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.story-graph.decay-interval-ms:600000}")
+    public void decayPopularity() {
+        edges.values().forEach(edge -> edge.hits.updateAndGet(hits -> hits / 2));
+    }
+
+    // Coût borné par eviction-sample, quelle que soit la taille du graphe
+    private synchronized void evictOverflow() {
+        while (edges.size() > maxEntries) {
+            List<String> sample = new ArrayList<>(evictionSample);
+            String key;
+            while (sample.size() < evictionSample && (key = evictionQueue.poll()) != null) {
+                if (edges.containsKey(key)) {
+                    sample.add(key);
+                }
+            }
+            if (sample.isEmpty()) {
+                return;
+            }
+
+            String victim = sample.get(0);
+            for (String candidate : sample) {
+                if (hitsOf(candidate) < hitsOf(victim)) {
+                    victim = candidate;
+                }
+            }
+            edges.remove(victim);
+            for (String candidate : sample) {
+                if (!candidate.equals(victim)) {
+                    evictionQueue.offer(candidate);
+                }
+            }
+        }
+    }
+
+    private int hitsOf(String key) {
+        Edge edge = edges.get(key);
+        return edge != null ? edge.hits.get() : 0;
+    }
+
+    private String key(String parentChapterHash, int choiceIndex) {
+        return parentChapterHash + ":" + choiceIndex;
+    }
+}
@@ -0,0 +1,35 @@
+package sn.codiallo.ecoBuddy.service;
+
+import sn.codiallo.ecoBuddy.model.StoryHistory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Curseur opaque de pagination de l'historique : completedAt + id de la dernière
+ * histoire renvoyée (paramètre cursor de GET /narration/history).
+ */
+record StoryHistoryCursor(LocalDateTime completedAt, Long id) {
+
+    static StoryHistoryCursor of(StoryHistory story) {
+        return new StoryHistoryCursor(story.getCompletedAt(), story.getId());
+    }
+
+    static StoryHistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new StoryHistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new RuntimeException("Invalid history cursor");
+        }
+    }
+
+    String encode() {
+        String raw = completedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Réserve bornée d'ouvertures d'histoire pré-générées.
+ * /narration/start retire une ouverture inutilisée en O(1) sans jamais attendre Gemini ;
+ * un rechargement en arrière-plan maintient la réserve au-dessus d'un seuil bas,
+ * en alternant les thèmes et dans la limite d'un nombre de générations par minute.
+ */
+@Service
+@Slf4j
+public class StoryStartPool {
+
+    private static final List<String> THEMES = List.of(
+            "ocean pollution", "renewable energy", "sustainable transport", "local food",
+            "waste and recycling", "water saving", "biodiversity", "urban nature"
+    );
+
+    private final GeminiService geminiService;
+
+    @Value("${narrative.start-pool.enabled:true}")
+    private boolean enabled;
+
+    @Value("${narrative.start-pool.capacity:30}")
+    private int capacity;
+
+    @Value("${narrative.start-pool.low-water-mark:10}")
+    private int lowWaterMark;
+
+    @Value("${narrative.start-pool.max-generations-per-minute:6}")
+    private int maxGenerationsPerMinute;
+
+    private final Queue<String> openings = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger themeCursor = new AtomicInteger();
+
+    // Fenêtre fixe d'une minute pour la limite de débit du rechargement
+    private long rateWindowStart;
+    private int generationsInWindow;
+
+    public StoryStartPool(GeminiService geminiService) {
+        this.geminiService = geminiService;
+    }
+
+    /**
+     * Retire une ouverture de la réserve, ou une ouverture de secours si elle est vide.
+     */
+    public String take() {
+        String opening = openings.poll();
+        if (opening != null) {
+            size.decrementAndGet();
+            return opening;
+        }
+        log.warn("Story start pool empty, serving fallback opening");
+        return geminiService.generateFallbackStoryStartJSON();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refill();
+    }
+
+    @Scheduled(fixedDelayString = "${narrative.start-pool.refill-interval-ms:10000}")
+    public void refill() {
+        if (!enabled) {
+            return;
+        }
+        int pending = size.get() + inFlight.get();
+        if (pending >= lowWaterMark) {
+            return;
+        }
+
+        int wanted = acquireGenerations(capacity - pending);
+        for (int i = 0; i < wanted; i++) {
+            String theme = THEMES.get(Math.floorMod(themeCursor.getAndIncrement(), THEMES.size()));
+            inFlight.incrementAndGet();
+            geminiService.generateStoryStartAsync(theme)
+                    .filter(text -> ChapterStreamParser.parse(text).found())
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    .subscribe(this::offer);
+        }
+    }
+
+    private void offer(String opening) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return;
+        }
+        openings.offer(opening);
+    }
+
+    private synchronized int acquireGenerations(int wanted) {
+        long now = System.currentTimeMillis();
+        if (now - rateWindowStart >= 60_000) {
+            rateWindowStart = now;
+            generationsInWindow = 0;
+        }
+        int granted = Math.max(0, Math.min(wanted, maxGenerationsPerMinute - generationsInWindow));
+        generationsInWindow += granted;
+        return granted;
+    }
+}
@@ -0,0 +1,98 @@
+package sn.codiallo.ecoBuddy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Seaux à jetons par utilisateur pour les endpoints qui appellent Gemini.
+ * Chaque utilisateur dispose de capacity jetons, rechargés à refill-per-second ;
+ * un appel consomme le coût de son endpoint (voir RateLimitFilter). Les seaux sont
+ * répartis sur des segments verrouillés séparément, et un seau inactif (donc plein)
+ * est retiré après idle-minutes : la mémoire suit les utilisateurs actifs.
+ */
+@Service
+@Slf4j
+public class UserRateLimiter {
+
+    private static final int STRIPES = 32;
+
+    private final Map<String, Bucket>[] stripes;
+    private final double capacity;
+    private final double refillPerNano;
+
+    @Value("${rate-limit.idle-minutes:10}")
+    private long idleMinutes;
+
+    @SuppressWarnings("unchecked")
+    public UserRateLimiter(@Value("${rate-limit.capacity:10}") double capacity,
+                           @Value("${rate-limit.refill-per-second:0.2}") double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new HashMap<>();
+        }
+    }
+
+    // Deux champs par utilisateur : jetons restants et date de la dernière recharge
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+
+    /**
+     * Consomme cost jetons. Retourne 0 si l'appel est accepté, sinon le délai en
+     * millisecondes avant que le seau en contienne assez (rien n'est consommé).
+     */
+    public long tryAcquire(String username, int cost) {
+        double needed = Math.min(cost, capacity);
+        long now = System.nanoTime();
+        Map<String, Bucket> stripe = stripeOf(username);
+
+        synchronized (stripe) {
+            Bucket bucket = stripe.computeIfAbsent(username, key -> new Bucket(capacity, now));
+            refill(bucket, now);
+            if (bucket.tokens >= needed) {
+                bucket.tokens -= needed;
+                return 0;
+            }
+            return (long) Math.ceil((needed - bucket.tokens) / refillPerNano / 1_000_000d);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long idleNanos = idleMinutes * 60_000_000_000L;
+        int evicted = 0;
+        for (Map<String, Bucket> stripe : stripes) {
+            synchronized (stripe) {
+                int before = stripe.size();
+                stripe.values().removeIf(bucket -> now - bucket.refilledAt > idleNanos);
+                evicted += before - stripe.size();
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate-limit buckets", evicted);
+        }
+    }
+
+    private void refill(Bucket bucket, long now) {
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * refillPerNano);
+        bucket.refilledAt = now;
+    }
+
+    private Map<String, Bucket> stripeOf(String username) {
+        return stripes[Math.floorMod(username.hashCode(), STRIPES)];
+    }
+}
@@ -0,0 +1,80 @@
+package sn.codiallo.ecoBuddy.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import sn.codiallo.ecoBuddy.service.UserRateLimiter;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateLimitFilterTest {
+
+    private final UserRateLimiter limiter = mock(UserRateLimiter.class);
+    private final FilterChain chain = mock(FilterChain.class);
+    private final RateLimitFilter filter = new RateLimitFilter(limiter, new SimpleMeterRegistry(), new ObjectMapper());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "narrationStartCost", 2);
+        ReflectionTestUtils.setField(filter, "narrationChoiceCost", 1);
+        ReflectionTestUtils.setField(filter, "scanCost", 2);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alice", null, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void retryAfterIsRoundedUpToWholeSeconds() throws Exception {
+        when(limiter.tryAcquire("alice", 1)).thenReturn(1_001L);
+
+        MockHttpServletResponse response = choice();
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("2");
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void retryAfterIsAtLeastOneSecond() throws Exception {
+        when(limiter.tryAcquire("alice", 1)).thenReturn(1L);
+
+        assertThat(choice().getHeader("Retry-After")).isEqualTo("1");
+    }
+
+    @Test
+    void unlimitedEndpointsAreNotCharged() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/history");
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(limiter, never()).tryAcquire(anyString(), anyInt());
+    }
+
+    private MockHttpServletResponse choice() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/narration/choice");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,60 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.Test;
+import sn.codiallo.ecoBuddy.model.StoredChapter;
+import sn.codiallo.ecoBuddy.repository.StoredChapterRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChapterStoreTest {
+
+    private final StoredChapterRepository repository = mock(StoredChapterRepository.class);
+    private final ChapterStore store = new ChapterStore(repository, 100);
+
+    @Test
+    void deletesOnlyChaptersNeitherInUseNorCached() {
+        StoredChapter cached = store.intern("Titre", "Contenu", "{\"title\":\"Titre\"}");
+        when(repository.findUnreferencedHashes(any(), anyString(), anyInt()))
+                .thenReturn(List.of("a", cached.getHash(), "b"));
+
+        List<String> examined = store.deleteUnreferenced(LocalDateTime.now(), "", Set.of("b"), 10);
+
+        assertThat(examined).containsExactly("a", cached.getHash(), "b");
+        verify(repository).deleteUnreferenced(List.of("a"));
+    }
+
+    @Test
+    void nothingToDeleteSkipsTheDelete() {
+        when(repository.findUnreferencedHashes(any(), anyString(), anyInt())).thenReturn(List.of("a"));
+
+        store.deleteUnreferenced(LocalDateTime.now(), "", Set.of("a"), 10);
+
+        verify(repository, never()).deleteUnreferenced(any());
+    }
+
+    @Test
+    void failedInsertIsNotServedFromCache() {
+        when(repository.insertIfAbsent(anyString(), anyString(), anyString(), anyString()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(1);
+
+        assertThatThrownBy(() -> store.intern("Titre", "Contenu", "payload"))
+                .isInstanceOf(IllegalStateException.class);
+        store.intern("Titre", "Contenu", "payload");
+
+        verify(repository, times(2)).insertIfAbsent(anyString(), anyString(), anyString(), anyString());
+    }
+}
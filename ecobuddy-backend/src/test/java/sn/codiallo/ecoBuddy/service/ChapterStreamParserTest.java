@@ -0,0 +1,82 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.Test;
+import sn.codiallo.ecoBuddy.dto.NarrativeStreamEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChapterStreamParserTest {
+
+    private static final String CHAPTER = "Voici le chapitre :\n```json\n"
+            + "{\"title\": \"La forêt\", \"content\": \"Il était une fois\\n\\\"Léa\\\" \\u00e9colo.\", "
+            + "\"choices\": [\"Planter\", \"Trier\"], \"points\": [15, \"20\"], \"isCompleted\": false}\n```";
+
+    @Test
+    void parsesTheObjectInsideSurroundingProse() {
+        ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse(CHAPTER);
+
+        assertThat(chapter.found()).isTrue();
+        assertThat(chapter.truncated()).isFalse();
+        assertThat(chapter.title()).isEqualTo("La forêt");
+        assertThat(chapter.content()).isEqualTo("Il était une fois\n\"Léa\" écolo.");
+        assertThat(chapter.choices()).containsExactly("Planter", "Trier");
+        assertThat(chapter.pointsPerChoice()).containsExactly(15, 20);
+        assertThat(chapter.isCompleted()).isFalse();
+    }
+
+    @Test
+    void fragmentsProduceTheSameChapterAndEventsInOrder() {
+        ChapterStreamParser parser = new ChapterStreamParser();
+        List<NarrativeStreamEvent> events = new ArrayList<>();
+        // Coupures au milieu des clés, des échappements et des séquences \\u
+        for (int i = 0; i < CHAPTER.length(); i += 3) {
+            events.addAll(parser.feed(CHAPTER.substring(i, Math.min(CHAPTER.length(), i + 3))));
+        }
+
+        assertThat(parser.result()).isEqualTo(ChapterStreamParser.parse(CHAPTER));
+        assertThat(events.get(0)).isEqualTo(new NarrativeStreamEvent("title", "La forêt"));
+        assertThat(events.get(events.size() - 1)).isEqualTo(new NarrativeStreamEvent("choices", List.of("Planter", "Trier")));
+        String streamed = events.stream()
+                .filter(event -> "content".equals(event.getEvent()))
+                .map(event -> (String) event.getData())
+                .reduce("", String::concat);
+        assertThat(streamed).isEqualTo("Il était une fois\n\"Léa\" écolo.");
+    }
+
+    @Test
+    void truncatedContentIsKeptAndMarked() {
+        ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse(
+                "{\"title\": \"Fin\", \"content\": \"Le soleil se lev");
+
+        assertThat(chapter.found()).isTrue();
+        assertThat(chapter.truncated()).isTrue();
+        assertThat(chapter.content()).isEqualTo("Le soleil se lev...");
+        assertThat(chapter.choices()).isNull();
+    }
+
+    @Test
+    void truncatedChoicesKeepTheCompleteOnes() {
+        ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse(
+                "{\"content\": \"Texte\", \"choices\": [\"Planter\", \"Tri");
+
+        assertThat(chapter.truncated()).isTrue();
+        assertThat(chapter.choices()).containsExactly("Planter");
+    }
+
+    @Test
+    void cutNumberIsNotReadAsTheFinalFlag() {
+        assertThat(ChapterStreamParser.parse("{\"content\": \"Texte\", \"isCompleted\": tr").isCompleted()).isNull();
+        assertThat(ChapterStreamParser.parse("{\"content\": \"Texte\", \"isCompleted\": true").isCompleted()).isTrue();
+    }
+
+    @Test
+    void textWithoutJsonIsNotFound() {
+        ChapterStreamParser.Chapter chapter = ChapterStreamParser.parse("TITRE: La forêt\nCHOIX 1: Planter");
+
+        assertThat(chapter.found()).isFalse();
+        assertThat(chapter.title()).isNull();
+    }
+}
@@ -0,0 +1,80 @@
+package sn.codiallo.ecoBuddy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import sn.codiallo.ecoBuddy.dto.CatalogDeltaResponse;
+import sn.codiallo.ecoBuddy.model.EcoObject;
+import sn.codiallo.ecoBuddy.repository.EcoObjectRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EcoCatalogServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    private final EcoObjectRepository repository = mock(EcoObjectRepository.class);
+    private final EcoCatalogService service = new EcoCatalogService(repository,
+            new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    @Test
+    void hardDeletedObjectsAreReportedAsRemoved() {
+        EcoObject bottle = ecoObject(1L, "bottle", T0);
+        EcoObject can = ecoObject(2L, "can", T0.plusMinutes(1));
+        catalog(List.of(bottle, can), T0.plusMinutes(1));
+        service.refresh();
+        long before = service.getSnapshot().version();
+
+        // Suppression physique : ni horodatage ni ligne désactivée pour la signaler
+        catalog(List.of(bottle), T0);
+        service.refresh();
+
+        CatalogDeltaResponse delta = service.getDelta(before);
+        assertThat(delta.getResync()).isFalse();
+        assertThat(delta.getRemoved()).containsExactly(2L);
+        assertThat(delta.getChanged()).isEmpty();
+        assertThat(delta.getVersion()).isGreaterThan(before);
+
+        assertThat(service.getDelta(delta.getVersion()).getRemoved()).isEmpty();
+    }
+
+    @Test
+    void clientsOlderThanDeletionTrackingMustResync() {
+        catalog(List.of(ecoObject(1L, "bottle", T0)), T0);
+        service.refresh();
+
+        CatalogDeltaResponse delta = service.getDelta(0L);
+        assertThat(delta.getResync()).isTrue();
+        assertThat(delta.getChanged()).isEmpty();
+    }
+
+    @Test
+    void gzipAndJsonRepresentationsHaveDistinctStrongEtags() {
+        catalog(List.of(ecoObject(1L, "bottle", T0)), T0);
+        service.refresh();
+
+        EcoCatalogService.CatalogSnapshot snapshot = service.getSnapshot();
+        assertThat(snapshot.etag(false)).isEqualTo(snapshot.etag()).startsWith("\"").endsWith("\"");
+        assertThat(snapshot.etag(true)).isNotEqualTo(snapshot.etag(false)).startsWith("\"").endsWith("-gz\"");
+    }
+
+    private void catalog(List<EcoObject> objects, LocalDateTime lastModifiedAt) {
+        when(repository.findAll()).thenReturn(objects);
+        when(repository.count()).thenReturn((long) objects.size());
+        when(repository.findLastModifiedAt()).thenReturn(lastModifiedAt);
+    }
+
+    private EcoObject ecoObject(Long id, String name, LocalDateTime modifiedAt) {
+        EcoObject ecoObject = new EcoObject();
+        ecoObject.setId(id);
+        ecoObject.setName(name);
+        ecoObject.setIsActive(true);
+        ecoObject.setCreatedAt(modifiedAt);
+        return ecoObject;
+    }
+}
@@ -0,0 +1,54 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiModelRouterTest {
+
+    private final GeminiModelRouter router = new GeminiModelRouter(new SimpleMeterRegistry());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(router, "narrativeRoutes", "gemini-1.5-flash-8b:4000, gemini-1.5-flash");
+        ReflectionTestUtils.setField(router, "speculativeRoutes", "gemini-1.5-flash");
+        ReflectionTestUtils.setField(router, "storyStartRoutes", "gemini-1.5-flash");
+        ReflectionTestUtils.setField(router, "scanAnalysisRoutes", "gemini-1.5-flash");
+        ReflectionTestUtils.setField(router, "errorRateDecay", 0.5);
+        ReflectionTestUtils.setField(router, "demoteErrorRate", 0.5);
+        router.init();
+    }
+
+    @Test
+    void parsesTiersInConfiguredOrder() {
+        assertThat(router.routes(GeminiCallType.NARRATIVE)).containsExactly(
+                new GeminiModelRouter.ModelRoute("gemini-1.5-flash-8b", Duration.ofMillis(4000)),
+                new GeminiModelRouter.ModelRoute("gemini-1.5-flash", null));
+    }
+
+    @Test
+    void failingModelIsDemotedThenRecovers() {
+        GeminiModelRouter.ModelRoute fast = router.routes(GeminiCallType.NARRATIVE).get(0);
+        router.recordFailure(GeminiCallType.NARRATIVE, fast, 1_000_000, new TimeoutException());
+        assertThat(router.routes(GeminiCallType.NARRATIVE).get(0).model()).isEqualTo("gemini-1.5-flash");
+
+        // Sans trafic sur le modèle rétrogradé, le taux d'erreur décroît jusqu'à le remettre en tête
+        router.decayErrorRates();
+        assertThat(router.routes(GeminiCallType.NARRATIVE).get(0).model()).isEqualTo("gemini-1.5-flash-8b");
+    }
+
+    @Test
+    void tierTimeoutOnlyCapsTheAdaptiveTimeout() {
+        GeminiModelRouter.ModelRoute capped = new GeminiModelRouter.ModelRoute("m", Duration.ofSeconds(4));
+        assertThat(capped.capTimeout(Duration.ofSeconds(10))).isEqualTo(Duration.ofSeconds(4));
+        assertThat(capped.capTimeout(Duration.ofSeconds(2))).isEqualTo(Duration.ofSeconds(2));
+        assertThat(new GeminiModelRouter.ModelRoute("m", null).capTimeout(Duration.ofSeconds(2)))
+                .isEqualTo(Duration.ofSeconds(2));
+    }
+}
@@ -0,0 +1,118 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GeminiResilienceTest {
+
+    private final GeminiResilience resilience = new GeminiResilience();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(resilience, "breakerWindowSize", 4);
+        ReflectionTestUtils.setField(resilience, "breakerMinCalls", 4);
+        ReflectionTestUtils.setField(resilience, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(resilience, "slowCallRateThreshold", 1.0);
+        ReflectionTestUtils.setField(resilience, "slowCallMs", 10_000L);
+        ReflectionTestUtils.setField(resilience, "openDurationMs", 60_000L);
+        ReflectionTestUtils.setField(resilience, "halfOpenTrialCalls", 1);
+        ReflectionTestUtils.setField(resilience, "narrativeConcurrency", 1);
+        ReflectionTestUtils.setField(resilience, "speculativeConcurrency", 1);
+        ReflectionTestUtils.setField(resilience, "storyStartConcurrency", 1);
+        ReflectionTestUtils.setField(resilience, "scanAnalysisConcurrency", 1);
+        ReflectionTestUtils.setField(resilience, "timeoutPercentile", 0.99);
+        ReflectionTestUtils.setField(resilience, "timeoutMultiplier", 2.0);
+        ReflectionTestUtils.setField(resilience, "minTimeoutMs", 1_000L);
+        ReflectionTestUtils.setField(resilience, "maxTimeoutMs", 12_000L);
+        ReflectionTestUtils.setField(resilience, "latencyWindowSize", 10);
+        ReflectionTestUtils.setField(resilience, "minLatencySamples", 2);
+        resilience.init();
+    }
+
+    @Test
+    void breakerOpensOnFailureRateThenRecoversThroughATrialCall() {
+        succeed();
+        succeed();
+        fail();
+        assertThat(resilience.getState()).isEqualTo(GeminiResilience.BreakerState.CLOSED);
+        fail();
+        assertThat(resilience.getState()).isEqualTo(GeminiResilience.BreakerState.OPEN);
+
+        assertThatThrownBy(this::succeed).isInstanceOf(GeminiResilience.CallNotPermittedException.class);
+
+        // Délai d'ouverture écoulé : un appel d'essai réussi referme le disjoncteur
+        ReflectionTestUtils.setField(resilience, "openDurationMs", 0L);
+        succeed();
+        assertThat(resilience.getState()).isEqualTo(GeminiResilience.BreakerState.CLOSED);
+    }
+
+    @Test
+    void failedTrialCallReopensTheBreaker() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        ReflectionTestUtils.setField(resilience, "openDurationMs", 0L);
+
+        fail();
+
+        assertThat(resilience.getState()).isEqualTo(GeminiResilience.BreakerState.OPEN);
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondItsConcurrency() {
+        Sinks.One<String> running = Sinks.one();
+        resilience.execute(GeminiCallType.NARRATIVE, timeout -> running.asMono()).subscribe();
+
+        assertThatThrownBy(this::succeed).isInstanceOf(GeminiResilience.CallNotPermittedException.class);
+
+        running.tryEmitValue("done");
+        assertThat(succeed()).isEqualTo("ok");
+    }
+
+    @Test
+    void adaptiveTimeoutFollowsObservedLatency() {
+        assertThat(resilience.currentTimeout(GeminiCallType.NARRATIVE)).isEqualTo(Duration.ofMillis(12_000));
+
+        resilience.recordLatency(GeminiCallType.NARRATIVE, 2_000);
+        resilience.recordLatency(GeminiCallType.NARRATIVE, 3_000);
+
+        assertThat(resilience.currentTimeout(GeminiCallType.NARRATIVE)).isEqualTo(Duration.ofMillis(6_000));
+        resilience.recordLatency(GeminiCallType.NARRATIVE, 100_000);
+        assertThat(resilience.currentTimeout(GeminiCallType.NARRATIVE)).isEqualTo(Duration.ofMillis(12_000));
+    }
+
+    @Test
+    void callerMeasuredCallsAreNotRecordedTwice() {
+        for (int i = 0; i < 2; i++) {
+            resilience.execute(GeminiCallType.NARRATIVE, timeout -> Mono.just("ok"))
+                    .contextWrite(context -> context.put(GeminiResilience.CALLER_RECORDS_LATENCY, true))
+                    .block();
+        }
+        assertThat(resilience.observedPercentile(GeminiCallType.NARRATIVE, 0.9)).isEqualTo(-1);
+
+        succeed();
+        succeed();
+        assertThat(resilience.observedPercentile(GeminiCallType.NARRATIVE, 0.9)).isNotNegative();
+    }
+
+    private String succeed() {
+        return resilience.execute(GeminiCallType.NARRATIVE, timeout -> Mono.just("ok")).block();
+    }
+
+    private void fail() {
+        try {
+            resilience.execute(GeminiCallType.NARRATIVE, timeout -> Mono.<String>error(new IllegalStateException("boom")))
+                    .block();
+        } catch (IllegalStateException e) {
+            // échec attendu
+        }
+    }
+}
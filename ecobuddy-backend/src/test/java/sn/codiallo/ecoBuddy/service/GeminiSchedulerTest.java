@@ -0,0 +1,173 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GeminiResilience resilience = new GeminiResilience();
+    private final GeminiScheduler scheduler = new GeminiScheduler(meterRegistry, resilience);
+    private final List<String> started = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(resilience, "breakerWindowSize", 50);
+        ReflectionTestUtils.setField(resilience, "breakerMinCalls", 10);
+        ReflectionTestUtils.setField(resilience, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(resilience, "slowCallRateThreshold", 1.0);
+        ReflectionTestUtils.setField(resilience, "slowCallMs", 10_000L);
+        ReflectionTestUtils.setField(resilience, "openDurationMs", 60_000L);
+        ReflectionTestUtils.setField(resilience, "halfOpenTrialCalls", 1);
+        for (String type : List.of("narrative", "speculative", "storyStart", "scanAnalysis")) {
+            ReflectionTestUtils.setField(resilience, type + "Concurrency", 10);
+        }
+        ReflectionTestUtils.setField(resilience, "latencyWindowSize", 10);
+        ReflectionTestUtils.setField(resilience, "minLatencySamples", 5);
+        ReflectionTestUtils.setField(resilience, "maxTimeoutMs", 12_000L);
+        resilience.init();
+
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrency", 2);
+        ReflectionTestUtils.setField(scheduler, "foregroundReserve", 1);
+        for (String type : List.of("narrative", "scanAnalysis", "speculative", "storyStart")) {
+            ReflectionTestUtils.setField(scheduler, type + "QueueCapacity", 2);
+            ReflectionTestUtils.setField(scheduler, type + "MaxWaitMs", 10_000L);
+        }
+        scheduler.init();
+    }
+
+    @Test
+    void backgroundWorkNeverTakesTheForegroundReserve() {
+        call(GeminiCallType.SPECULATIVE, "spec-1");
+        call(GeminiCallType.SPECULATIVE, "spec-2");
+        call(GeminiCallType.NARRATIVE, "narrative");
+
+        assertThat(started).containsExactly("spec-1", "narrative");
+        assertThat(queued(GeminiCallType.SPECULATIVE)).isEqualTo(1);
+    }
+
+    @Test
+    void freedSlotGoesToTheHighestPriorityQueue() {
+        Sinks.One<String> first = call(GeminiCallType.NARRATIVE, "n-1");
+        Sinks.One<String> second = call(GeminiCallType.NARRATIVE, "n-2");
+        call(GeminiCallType.STORY_START, "start");
+        call(GeminiCallType.SCAN_ANALYSIS, "scan");
+
+        // Une seule place libre : c'est la réserve de premier plan, le fond attend
+        first.tryEmitValue("done");
+        assertThat(started).containsExactly("n-1", "n-2");
+
+        // SCAN_ANALYSIS (priorité 1) passe avant STORY_START (priorité 3)
+        second.tryEmitValue("done");
+        assertThat(started).containsExactly("n-1", "n-2", "scan");
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueueAndRunningCallsReleaseOnCancel() {
+        call(GeminiCallType.NARRATIVE, "n-1");
+        Disposable running = subscribe(GeminiCallType.NARRATIVE, "n-2", Sinks.one());
+        Disposable waiting = subscribe(GeminiCallType.NARRATIVE, "n-3", Sinks.one());
+        assertThat(queued(GeminiCallType.NARRATIVE)).isEqualTo(1);
+
+        waiting.dispose();
+        assertThat(queued(GeminiCallType.NARRATIVE)).isZero();
+
+        running.dispose();
+        call(GeminiCallType.NARRATIVE, "n-4");
+        assertThat(started).containsExactly("n-1", "n-2", "n-4");
+        assertThat(meterRegistry.get("gemini.scheduler.running").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void failedCallReleasesItsSlot() {
+        Sinks.One<String> first = call(GeminiCallType.NARRATIVE, "n-1");
+        call(GeminiCallType.NARRATIVE, "n-2");
+        call(GeminiCallType.NARRATIVE, "n-3");
+
+        first.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(started).containsExactly("n-1", "n-2", "n-3");
+    }
+
+    @Test
+    void fullQueueIsRejected() {
+        call(GeminiCallType.STORY_START, "s-1");
+        call(GeminiCallType.STORY_START, "s-2");
+        call(GeminiCallType.STORY_START, "s-3");
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        scheduler.schedule(GeminiCallType.STORY_START, Mono.just("s-4")).subscribe(value -> { }, error::set);
+
+        assertThat(error.get()).isInstanceOf(GeminiResilience.CallNotPermittedException.class);
+    }
+
+    @Test
+    void waiterPastItsDeadlineIsRejected() {
+        ReflectionTestUtils.setField(scheduler, "speculativeMaxWaitMs", 50L);
+        scheduler.init();
+        call(GeminiCallType.SPECULATIVE, "spec-1");
+
+        Throwable error = scheduler.schedule(GeminiCallType.SPECULATIVE, Mono.just("spec-2"))
+                .materialize()
+                .block()
+                .getThrowable();
+
+        assertThat(error).isInstanceOf(GeminiResilience.CallNotPermittedException.class);
+        assertThat(queued(GeminiCallType.SPECULATIVE)).isZero();
+    }
+
+    @Test
+    void callsBeyondTheBulkheadWaitForASlotInsteadOfBeingRefused() {
+        ReflectionTestUtils.setField(resilience, "narrativeConcurrency", 2);
+        resilience.init();
+        ReflectionTestUtils.setField(scheduler, "maxConcurrency", 4);
+
+        List<Sinks.One<String>> calls = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> result = Sinks.one();
+            calls.add(result);
+            scheduler.schedule(GeminiCallType.NARRATIVE,
+                            resilience.execute(GeminiCallType.NARRATIVE, timeout -> result.asMono()))
+                    .subscribe(results::add, errors::add);
+        }
+
+        // Cloison narrative pleine : le troisième appel attend en file, il n'est pas refusé
+        assertThat(errors).isEmpty();
+        assertThat(queued(GeminiCallType.NARRATIVE)).isEqualTo(1);
+
+        calls.get(0).tryEmitValue("first");
+        assertThat(queued(GeminiCallType.NARRATIVE)).isZero();
+        calls.get(2).tryEmitValue("third");
+
+        assertThat(errors).isEmpty();
+        assertThat(results).containsExactly("first", "third");
+    }
+
+    private Sinks.One<String> call(GeminiCallType type, String name) {
+        Sinks.One<String> result = Sinks.one();
+        subscribe(type, name, result);
+        return result;
+    }
+
+    private Disposable subscribe(GeminiCallType type, String name, Sinks.One<String> result) {
+        return scheduler.schedule(type, result.asMono().doOnSubscribe(subscription -> started.add(name)))
+                .subscribe(value -> { }, error -> { });
+    }
+
+    private double queued(GeminiCallType type) {
+        return meterRegistry.get("gemini.scheduler.queued").tag("type", type.name()).gauge().value();
+    }
+}
@@ -0,0 +1,138 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiServiceCascadeTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> calledModels = new CopyOnWriteArrayList<>();
+    private final GeminiResilience resilience = new GeminiResilience();
+    private final GeminiScheduler scheduler = new GeminiScheduler(meterRegistry, resilience);
+    private final GeminiModelRouter router = new GeminiModelRouter(meterRegistry);
+    private GeminiService service;
+
+    @BeforeEach
+    void setUp() {
+        // "dead" répond toujours 503, "lagging" 503 après 300 ms, "slow" au bout de 3 s, "alive" aussitôt
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String path = request.url().getPath();
+                    calledModels.add(path.substring(path.lastIndexOf('/') + 1, path.indexOf(':')));
+                    if (path.contains("/dead:")) {
+                        return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    }
+                    if (path.contains("/lagging:")) {
+                        return Mono.delay(Duration.ofMillis(300))
+                                .map(tick -> ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    }
+                    Mono<ClientResponse> ok = Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"analyse\"}]}}]}")
+                            .build());
+                    return path.contains("/slow:") ? Mono.delay(Duration.ofSeconds(3)).then(ok) : ok;
+                })
+                .build();
+
+        ReflectionTestUtils.setField(resilience, "breakerWindowSize", 10);
+        ReflectionTestUtils.setField(resilience, "breakerMinCalls", 1);
+        ReflectionTestUtils.setField(resilience, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(resilience, "slowCallRateThreshold", 1.0);
+        ReflectionTestUtils.setField(resilience, "slowCallMs", 10_000L);
+        ReflectionTestUtils.setField(resilience, "openDurationMs", 60_000L);
+        ReflectionTestUtils.setField(resilience, "halfOpenTrialCalls", 1);
+        for (String type : List.of("narrative", "speculative", "storyStart", "scanAnalysis")) {
+            ReflectionTestUtils.setField(resilience, type + "Concurrency", 4);
+        }
+        ReflectionTestUtils.setField(resilience, "timeoutPercentile", 0.99);
+        ReflectionTestUtils.setField(resilience, "timeoutMultiplier", 1.5);
+        ReflectionTestUtils.setField(resilience, "minTimeoutMs", 1_000L);
+        ReflectionTestUtils.setField(resilience, "maxTimeoutMs", 5_000L);
+        ReflectionTestUtils.setField(resilience, "latencyWindowSize", 10);
+        ReflectionTestUtils.setField(resilience, "minLatencySamples", 5);
+        resilience.init();
+
+        ReflectionTestUtils.setField(scheduler, "enabled", false);
+
+        ReflectionTestUtils.setField(router, "narrativeRoutes", "alive");
+        ReflectionTestUtils.setField(router, "speculativeRoutes", "alive");
+        ReflectionTestUtils.setField(router, "storyStartRoutes", "alive");
+        ReflectionTestUtils.setField(router, "scanAnalysisRoutes", "dead,alive");
+        ReflectionTestUtils.setField(router, "errorRateDecay", 0.1);
+        ReflectionTestUtils.setField(router, "demoteErrorRate", 0.5);
+        ReflectionTestUtils.setField(router, "cascadeBudgetMs", 5_000L);
+        router.init();
+
+        service = new GeminiService(webClient, resilience, scheduler, router, meterRegistry);
+        ReflectionTestUtils.setField(service, "apiKey", "key");
+        ReflectionTestUtils.setField(service, "baseUrl", "http://gemini.test");
+        ReflectionTestUtils.setField(service, "hedgingEnabled", false);
+        service.initHedgeBudget();
+    }
+
+    @Test
+    void deadTierFallsThroughWithoutTrippingTheBreaker() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(service.generateScanAnalysisAsync("prompt").block(Duration.ofSeconds(5))).isEqualTo("analyse");
+        }
+
+        // Chaque requête a réussi via le palier suivant : le disjoncteur global reste fermé
+        assertThat(resilience.getState()).isEqualTo(GeminiResilience.BreakerState.CLOSED);
+        assertThat(meterRegistry.counter("gemini.model.fallthrough", "model", "dead", "type", "SCAN_ANALYSIS").count())
+                .isPositive();
+    }
+
+    @Test
+    void repeatedlyFailingTierIsDemotedBehindTheHealthyOne() {
+        for (int i = 0; i < 8; i++) {
+            service.generateScanAnalysisAsync("prompt").block(Duration.ofSeconds(5));
+        }
+        calledModels.clear();
+
+        service.generateScanAnalysisAsync("prompt").block(Duration.ofSeconds(5));
+
+        assertThat(calledModels).containsExactly("alive");
+    }
+
+    @Test
+    void tiersShareOneDeadline() {
+        ReflectionTestUtils.setField(router, "scanAnalysisRoutes", "slow,slow");
+        ReflectionTestUtils.setField(router, "cascadeBudgetMs", 1_000L);
+        router.init();
+
+        long start = System.nanoTime();
+        assertThat(service.generateScanAnalysisAsync("prompt").block(Duration.ofSeconds(10))).isNull();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Le premier palier consomme tout le budget : le second n'est même pas appelé
+        assertThat(elapsedMs).isLessThan(2_500);
+        assertThat(calledModels).containsExactly("slow");
+    }
+
+    @Test
+    void adaptiveTimeoutSeesTheLatencyOfTheAnsweringTier() {
+        ReflectionTestUtils.setField(router, "scanAnalysisRoutes", "lagging,alive");
+        router.init();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.generateScanAnalysisAsync("prompt").block(Duration.ofSeconds(5))).isEqualTo("analyse");
+        }
+
+        // Les 300 ms perdues sur le palier en échec ne gonflent pas la fenêtre de latence
+        assertThat(resilience.observedPercentile(GeminiCallType.SCAN_ANALYSIS, 0.99)).isBetween(0L, 250L);
+    }
+}
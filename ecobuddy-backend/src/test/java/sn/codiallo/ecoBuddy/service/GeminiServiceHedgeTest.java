@@ -0,0 +1,114 @@
+package sn.codiallo.ecoBuddy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GeminiServiceHedgeTest {
+
+    private static final long HEDGE_DELAY_MS = 1_000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GeminiResilience resilience = mock(GeminiResilience.class);
+    private final GeminiService service = new GeminiService(mock(WebClient.class), resilience,
+            mock(GeminiScheduler.class), mock(GeminiModelRouter.class), meterRegistry);
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(resilience.observedPercentile(GeminiCallType.NARRATIVE, 0.9)).thenReturn(10L);
+        ReflectionTestUtils.setField(service, "hedgingEnabled", true);
+        ReflectionTestUtils.setField(service, "hedgedTypes", Set.of("NARRATIVE"));
+        ReflectionTestUtils.setField(service, "hedgePercentile", 0.9);
+        ReflectionTestUtils.setField(service, "hedgeMinDelayMs", HEDGE_DELAY_MS);
+        ReflectionTestUtils.setField(service, "hedgeBudgetRatio", 1.0);
+        ReflectionTestUtils.setField(service, "hedgeBudgetMaxTokens", 10.0);
+        service.initHedgeBudget();
+    }
+
+    @Test
+    void primaryErrorBeforeTheHedgeFailsAtOnce() {
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> hedge(List.of(Mono.error(new IllegalStateException("boom")))))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(HEDGE_DELAY_MS);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void fasterHedgeWinsAndLatencyIsMeasuredFromTheFirstAttempt() {
+        String text = hedge(List.of(Mono.delay(Duration.ofSeconds(5)).thenReturn("slow"), Mono.just("fast")));
+
+        assertThat(text).isEqualTo("fast");
+        assertThat(meterRegistry.counter("gemini.hedge.won", "type", "NARRATIVE").count()).isEqualTo(1);
+        ArgumentCaptor<Long> latency = ArgumentCaptor.forClass(Long.class);
+        verify(resilience).recordLatency(eq(GeminiCallType.NARRATIVE), latency.capture());
+        assertThat(latency.getValue()).isGreaterThanOrEqualTo(HEDGE_DELAY_MS);
+    }
+
+    @Test
+    void primaryFailingAfterTheHedgeLeavesTheHedgeToAnswer() {
+        Sinks.One<String> primary = Sinks.one();
+        // La première tentative échoue seulement une fois la couverture partie
+        String text = hedge(List.of(primary.asMono(), Mono.defer(() -> {
+            primary.tryEmitError(new IllegalStateException("boom"));
+            return Mono.delay(Duration.ofMillis(100)).thenReturn("hedge");
+        })));
+
+        assertThat(text).isEqualTo("hedge");
+    }
+
+    @Test
+    void bothAttemptsFailingFails() {
+        Sinks.One<String> primary = Sinks.one();
+
+        assertThatThrownBy(() -> hedge(List.of(primary.asMono(), Mono.defer(() -> {
+            primary.tryEmitError(new IllegalStateException("first"));
+            return Mono.error(new IllegalStateException("second"));
+        })))).hasMessage("second");
+    }
+
+    @Test
+    void attemptsRunWithTheHedgedFlag() {
+        // Sous couverture, les paliers n'enregistrent pas leur latence : hedge mesure la requête entière
+        Object hedgedKey = ReflectionTestUtils.getField(GeminiService.class, "HEDGED");
+        AtomicInteger flagged = new AtomicInteger();
+        Mono<String> attempt = Mono.deferContextual(context -> {
+            if (context.hasKey(hedgedKey)) {
+                flagged.incrementAndGet();
+            }
+            return Mono.just("ok");
+        });
+
+        ReflectionTestUtils.<Mono<String>>invokeMethod(service, "hedge", GeminiCallType.NARRATIVE, attempt)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(flagged.get()).isEqualTo(1);
+    }
+
+    // Chaque souscription à la tentative joue la réponse suivante de la liste
+    private String hedge(List<Mono<String>> responses) {
+        Mono<String> attempt = Mono.defer(() -> responses.get(attempts.getAndIncrement()));
+        Mono<String> hedged = ReflectionTestUtils.invokeMethod(service, "hedge", GeminiCallType.NARRATIVE, attempt);
+        return hedged.block(Duration.ofSeconds(5));
+    }
+}
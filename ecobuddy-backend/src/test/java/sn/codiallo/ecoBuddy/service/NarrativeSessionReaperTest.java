@@ -0,0 +1,115 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import sn.codiallo.ecoBuddy.repository.NarrativeSessionRepository;
+import sn.codiallo.ecoBuddy.repository.NarrativeStepRepository;
+import sn.codiallo.ecoBuddy.repository.StoryHistoryRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NarrativeSessionReaperTest {
+
+    private final NarrativeSessionRepository sessionRepository = mock(NarrativeSessionRepository.class);
+    private final NarrativeStepRepository stepRepository = mock(NarrativeStepRepository.class);
+    private final StoryHistoryRepository historyRepository = mock(StoryHistoryRepository.class);
+    private final NarrativeSessionStore sessionStore = mock(NarrativeSessionStore.class);
+    private final ChapterStore chapterStore = mock(ChapterStore.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final NarrativeSessionReaper reaper = new NarrativeSessionReaper(sessionRepository, stepRepository,
+            historyRepository, sessionStore, chapterStore, transactionManager);
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        ReflectionTestUtils.setField(reaper, "enabled", true);
+        ReflectionTestUtils.setField(reaper, "idleHours", 24L);
+        ReflectionTestUtils.setField(reaper, "batchSize", 3);
+        ReflectionTestUtils.setField(reaper, "maxBatchesPerRun", 5);
+        ReflectionTestUtils.setField(reaper, "chapterGraceHours", 24L);
+    }
+
+    @Test
+    void sessionsHeldInMemoryAreNotReaped() {
+        when(sessionRepository.findIdleActiveIds(any(), any())).thenReturn(List.of(1L, 2L));
+        when(sessionStore.cachedSessionIds()).thenReturn(Set.of(2L));
+        when(sessionRepository.lockIdleActiveIds(eq(List.of(1L)), any())).thenReturn(List.of(1L));
+
+        reaper.reapAbandonedSessions();
+
+        verify(historyRepository).insertAbandonedForSessions(eq(List.of(1L)), any());
+        verify(sessionRepository).abandon(eq(List.of(1L)), any());
+        verify(stepRepository).deleteBySessionIds(eq(List.of(1L)), any());
+    }
+
+    @Test
+    void everyStatementOfTheBatchRechecksTheIdleCutoff() {
+        when(sessionRepository.findIdleActiveIds(any(), any())).thenReturn(List.of(1L, 2L));
+        when(sessionStore.cachedSessionIds()).thenReturn(Set.of());
+        // La session 2 a repris entre la sélection du lot et sa transaction
+        when(sessionRepository.lockIdleActiveIds(eq(List.of(1L, 2L)), any())).thenReturn(List.of(1L));
+
+        reaper.reapAbandonedSessions();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(sessionRepository).findIdleActiveIds(cutoff.capture(), any());
+        InOrder order = inOrder(sessionRepository, historyRepository, stepRepository);
+        order.verify(sessionRepository).lockIdleActiveIds(List.of(1L, 2L), cutoff.getValue());
+        order.verify(historyRepository).insertAbandonedForSessions(List.of(1L), cutoff.getValue());
+        order.verify(stepRepository).deleteBySessionIds(List.of(1L), cutoff.getValue());
+        order.verify(sessionRepository).deleteChoices(List.of(1L), cutoff.getValue());
+        order.verify(sessionRepository).abandon(List.of(1L), cutoff.getValue());
+    }
+
+    @Test
+    void batchWithNoSessionStillIdleChangesNothing() {
+        when(sessionRepository.findIdleActiveIds(any(), any())).thenReturn(List.of(1L));
+        when(sessionStore.cachedSessionIds()).thenReturn(Set.of());
+        when(sessionRepository.lockIdleActiveIds(any(), any())).thenReturn(List.of());
+
+        reaper.reapAbandonedSessions();
+
+        verify(historyRepository, never()).insertAbandonedForSessions(any(), any());
+        verify(stepRepository, never()).deleteBySessionIds(any(), any());
+        verify(sessionRepository, never()).abandon(any(), any());
+    }
+
+    @Test
+    void batchFullyInMemoryStopsTheRun() {
+        when(sessionRepository.findIdleActiveIds(any(), any())).thenReturn(List.of(1L));
+        when(sessionStore.cachedSessionIds()).thenReturn(Set.of(1L));
+
+        reaper.reapAbandonedSessions();
+
+        verify(sessionRepository, never()).abandon(any(), any());
+    }
+
+    @Test
+    void chapterSweepWalksBatchesByHash() {
+        Set<String> inUse = Set.of("h0");
+        when(sessionStore.referencedChapterHashes()).thenReturn(inUse);
+        when(chapterStore.deleteUnreferenced(any(), eq(""), eq(inUse), anyInt())).thenReturn(List.of("a", "b", "c"));
+        when(chapterStore.deleteUnreferenced(any(), eq("c"), eq(inUse), anyInt())).thenReturn(List.of("d"));
+
+        reaper.deleteUnreferencedChapters();
+
+        verify(chapterStore).deleteUnreferenced(any(), eq("c"), eq(inUse), eq(3));
+        verify(chapterStore, never()).deleteUnreferenced(any(), eq("d"), any(), anyInt());
+    }
+}
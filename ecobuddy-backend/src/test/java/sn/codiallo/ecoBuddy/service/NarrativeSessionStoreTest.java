@@ -0,0 +1,120 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import sn.codiallo.ecoBuddy.model.NarrativeSession;
+import sn.codiallo.ecoBuddy.model.User;
+import sn.codiallo.ecoBuddy.repository.NarrativeSessionRepository;
+import sn.codiallo.ecoBuddy.repository.NarrativeStepRepository;
+import sn.codiallo.ecoBuddy.repository.UserRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NarrativeSessionStoreTest {
+
+    private final NarrativeSessionRepository sessionRepository = mock(NarrativeSessionRepository.class);
+    private final NarrativeHistoryService historyService = mock(NarrativeHistoryService.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final NarrativeHistoryService buffers =
+            new NarrativeHistoryService(mock(NarrativeStepRepository.class), mock(ChapterStore.class));
+
+    private NarrativeSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        store = new NarrativeSessionStore(sessionRepository, historyService, userRepository, transactionManager);
+        ReflectionTestUtils.setField(store, "maxSessions", 100);
+        ReflectionTestUtils.setField(store, "idleMinutes", 10L);
+        ReflectionTestUtils.setField(store, "flushEverySteps", 2);
+    }
+
+    @Test
+    void flushRunsInItsOwnTransaction() {
+        NarrativeSessionStore.ActiveSession active = register("s1");
+
+        store.withSession("s1", session -> {
+            session.addPoints(5);
+            store.stepRecorded(session);
+            return null;
+        });
+        verify(userRepository, never()).addPoints(any(), anyInt());
+
+        store.withSession("s1", session -> {
+            store.stepRecorded(session);
+            return null;
+        });
+
+        // Jamais jointe à la transaction de l'appelant : le flush est validé ou échoue seul
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().getPropagationBehavior())
+                .isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        verify(userRepository).addPoints(1L, 5);
+        assertThat(active.isDirty()).isFalse();
+        assertThat(active.getUserPoints()).isEqualTo(15);
+    }
+
+    @Test
+    void failedFlushKeepsStateForTheNextAttempt() {
+        NarrativeSessionStore.ActiveSession active = register("s1");
+        when(sessionRepository.save(any())).thenThrow(new IllegalStateException("db down")).thenReturn(null);
+
+        store.withSession("s1", session -> {
+            session.addPoints(3);
+            store.complete(session);
+            return null;
+        });
+        assertThat(active.isDirty()).isTrue();
+        assertThat(active.isEvicted()).isFalse();
+        verify(userRepository, never()).addPoints(any(), anyInt());
+
+        store.flushAndEvict();
+
+        verify(userRepository, times(1)).addPoints(1L, 3);
+        assertThat(active.isDirty()).isFalse();
+    }
+
+    @Test
+    void staleCopyIsDroppedInsteadOfOverwritingTheDatabase() {
+        NarrativeSessionStore.ActiveSession active = register("s1");
+        when(sessionRepository.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(NarrativeSession.class, 1L));
+
+        store.withSession("s1", session -> {
+            session.addPoints(4);
+            store.stepRecorded(session);
+            store.stepRecorded(session);
+            return null;
+        });
+
+        // Clôturée en base entre-temps : plus servie depuis la mémoire, mais les points restent acquis
+        assertThat(active.isEvicted()).isTrue();
+        assertThat(store.cachedSessionIds()).isEmpty();
+        verify(userRepository).addPoints(1L, 4);
+    }
+
+    private NarrativeSessionStore.ActiveSession register(String sessionId) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("alice");
+        user.setPoints(10);
+        NarrativeSession session = new NarrativeSession();
+        session.setSessionId(sessionId);
+        session.setUser(user);
+        return store.register(session, user, buffers.newBuffer());
+    }
+}
@@ -0,0 +1,82 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScanDeduplicationServiceTest {
+
+    private final ScanDeduplicationService service = new ScanDeduplicationService(true, 30, 6, 1000, 5000);
+
+    @Test
+    void concurrentRescansRunTheScanOnce() throws Exception {
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> service.deduplicate("alice", "Bottle", String.class, () -> {
+                    scans.incrementAndGet();
+                    await(release);
+                    return "first";
+                }, first -> "duplicate of " + first)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            List<String> responses = new ArrayList<>();
+            for (Future<String> result : results) {
+                responses.add(result.get(5, TimeUnit.SECONDS));
+            }
+            assertThat(scans).hasValue(1);
+            assertThat(responses).containsOnlyOnce("first");
+            assertThat(responses).filteredOn("duplicate of first"::equals).hasSize(7);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keyIsPerUserAndNormalizedLabel() {
+        assertThat(service.deduplicate("alice", "Bottle", String.class, () -> "a", d -> "dup")).isEqualTo("a");
+        assertThat(service.deduplicate("alice", " bottle ", String.class, () -> "b", d -> "dup")).isEqualTo("dup");
+        assertThat(service.deduplicate("bob", "Bottle", String.class, () -> "c", d -> "dup")).isEqualTo("c");
+    }
+
+    @Test
+    void failedScanReleasesTheKey() {
+        assertThatThrownBy(() -> service.deduplicate("alice", "can", String.class,
+                () -> { throw new IllegalStateException("boom"); }, d -> "dup"))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(service.deduplicate("alice", "can", String.class, () -> "retry", d -> "dup")).isEqualTo("retry");
+    }
+
+    @Test
+    void disabledServiceAlwaysScans() {
+        ScanDeduplicationService disabled = new ScanDeduplicationService(false, 30, 6, 1000, 5000);
+        AtomicInteger scans = new AtomicInteger();
+        disabled.deduplicate("alice", "can", String.class, () -> "x" + scans.incrementAndGet(), d -> "dup");
+        disabled.deduplicate("alice", "can", String.class, () -> "x" + scans.incrementAndGet(), d -> "dup");
+        assertThat(scans).hasValue(2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
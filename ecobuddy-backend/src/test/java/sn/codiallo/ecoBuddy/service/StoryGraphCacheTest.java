@@ -0,0 +1,59 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoryGraphCacheTest {
+
+    private final StoryGraphCache cache = new StoryGraphCache();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "reuseProbability", 1.0);
+        ReflectionTestUtils.setField(cache, "maxEntries", 3);
+        ReflectionTestUtils.setField(cache, "evictionSample", 2);
+    }
+
+    @Test
+    void newEdgeIsNotEvictedAheadOfOlderOnes() {
+        cache.record("a", 0, "A");
+        cache.record("b", 0, "B");
+        cache.record("c", 0, "C");
+        cache.lookup("a", 0);
+        cache.lookup("b", 0);
+        cache.lookup("c", 0);
+
+        // Toutes les entrées en place sont plus demandées que la nouvelle : elle reste quand même
+        cache.record("d", 0, "D");
+
+        assertThat(cache.lookup("d", 0)).contains("D");
+    }
+
+    @Test
+    void leastRequestedOfTheOldestEdgesIsEvicted() {
+        cache.record("a", 0, "A");
+        cache.record("b", 0, "B");
+        cache.record("c", 0, "C");
+        cache.lookup("a", 0);
+
+        cache.record("d", 0, "D");
+
+        assertThat(cache.lookup("b", 0)).isEmpty();
+        assertThat(cache.lookup("a", 0)).contains("A");
+        assertThat(cache.lookup("c", 0)).contains("C");
+        assertThat(cache.lookup("d", 0)).contains("D");
+    }
+
+    @Test
+    void disabledGraphStoresNothing() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        cache.record("a", 0, "A");
+
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        assertThat(cache.lookup("a", 0)).isEmpty();
+    }
+}
@@ -0,0 +1,43 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.Test;
+import sn.codiallo.ecoBuddy.model.StoryHistory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StoryHistoryCursorTest {
+
+    @Test
+    void roundTripsTheLastStoryPosition() {
+        StoryHistory story = new StoryHistory();
+        story.setId(42L);
+        story.setCompletedAt(LocalDateTime.of(2025, 3, 1, 18, 30, 5, 123_456_789));
+
+        String encoded = StoryHistoryCursor.of(story).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(StoryHistoryCursor.decode(encoded))
+                .isEqualTo(new StoryHistoryCursor(story.getCompletedAt(), 42L));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertThatThrownBy(() -> StoryHistoryCursor.decode("not base64!"))
+                .hasMessage("Invalid history cursor");
+        assertThatThrownBy(() -> StoryHistoryCursor.decode(encode("2025-03-01T18:30")))
+                .hasMessage("Invalid history cursor");
+        assertThatThrownBy(() -> StoryHistoryCursor.decode(encode("yesterday|42")))
+                .hasMessage("Invalid history cursor");
+        assertThatThrownBy(() -> StoryHistoryCursor.decode(encode("2025-03-01T18:30|x")))
+                .hasMessage("Invalid history cursor");
+    }
+
+    private String encode(String raw) {
+        return Base64.getUrlEncoder().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,46 @@
+package sn.codiallo.ecoBuddy.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserRateLimiterTest {
+
+    // 2 jetons, un jeton toutes les 2 secondes
+    private final UserRateLimiter limiter = new UserRateLimiter(2, 0.5);
+
+    @Test
+    void waitIsTheTimeToRefillTheMissingTokens() {
+        assertThat(limiter.tryAcquire("alice", 2)).isZero();
+
+        long waitMillis = limiter.tryAcquire("alice", 1);
+        assertThat(waitMillis).isBetween(1_500L, 2_000L);
+
+        // Rien n'est consommé par un appel refusé : il en manque toujours autant
+        assertThat(limiter.tryAcquire("alice", 2)).isBetween(3_500L, 4_000L);
+    }
+
+    @Test
+    void costAboveCapacityOnlyNeedsAFullBucket() {
+        assertThat(limiter.tryAcquire("alice", 5)).isZero();
+        assertThat(limiter.tryAcquire("alice", 5)).isBetween(3_500L, 4_000L);
+    }
+
+    @Test
+    void usersHaveSeparateBuckets() {
+        assertThat(limiter.tryAcquire("alice", 2)).isZero();
+        assertThat(limiter.tryAcquire("bob", 2)).isZero();
+        assertThat(limiter.tryAcquire("alice", 1)).isPositive();
+    }
+
+    @Test
+    void idleBucketsAreEvictedAndComeBackFull() {
+        ReflectionTestUtils.setField(limiter, "idleMinutes", 0L);
+        assertThat(limiter.tryAcquire("alice", 2)).isZero();
+
+        limiter.evictIdle();
+
+        assertThat(limiter.tryAcquire("alice", 2)).isZero();
+    }
+}